@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import com.reid.pdfbatchsplitter.domain.ComponentPage;
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import com.reid.pdfbatchsplitter.service.PageInterpreter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The SearchTerm matching loop of interpretPDFPages(), over the text of every
+ * page of the batch with the default SearchTerms: the original loop, which
+ * compiled each SearchTerm's Pattern for every page; the same loop using the
+ * Patterns cached by SearchTerm; and PageInterpreter, with and without a
+ * match window. Also ComponentPage.getCompleteIdentifier(), which builds each
+ * output filename.
+ *
+ * @author pmreid
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpretBenchmark {
+
+    private List<SearchTerm> searchTerms;
+    private List<String> texts; // extracted text of each page
+    private List<ComponentPage> interpreted; // pages already interpreted, for getCompleteIdentifier()
+    private PageInterpreter interpreter;
+    private PageInterpreter windowedInterpreter;
+
+    @Setup(Level.Trial)
+    public void extractText(SyntheticSource source) throws IOException {
+        searchTerms = SearchTerm.getDefaults();
+        texts = new ArrayList<>();
+        try (PDDocument doc = Loader.loadPDF(source.file)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int pageNum = 1; pageNum <= doc.getNumberOfPages(); pageNum++) {
+                stripper.setStartPage(pageNum);
+                stripper.setEndPage(pageNum);
+                texts.add(stripper.getText(doc));
+            }
+        }
+        interpreter = new PageInterpreter(searchTerms);
+        windowedInterpreter = new PageInterpreter(searchTerms, 200);
+        interpreted = new ArrayList<>();
+        for (int pageNum = 0; pageNum < texts.size(); pageNum++) {
+            ComponentPage page = new ComponentPage(null, texts.get(pageNum), pageNum);
+            interpreter.interpret(page);
+            interpreted.add(page);
+        }
+    }
+
+    @Benchmark
+    public int compilePatternPerPage() {
+        int found = 0;
+        for (String text : texts) {
+            for (SearchTerm search : searchTerms) {
+                Matcher matcher = Pattern.compile(search.getRegex(), Pattern.DOTALL).matcher(text);
+                if (matcher.find()) {
+                    found += matcher.group(search.getOutputGroup()).trim().length();
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int cachedPattern() {
+        int found = 0;
+        for (String text : texts) {
+            for (SearchTerm search : searchTerms) {
+                Matcher matcher = search.getPattern().matcher(text);
+                if (matcher.find()) {
+                    found += matcher.group(search.getOutputGroup()).trim().length();
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public void pageInterpreter(Blackhole blackhole) {
+        for (int pageNum = 0; pageNum < texts.size(); pageNum++) {
+            ComponentPage page = new ComponentPage(null, texts.get(pageNum), pageNum);
+            interpreter.interpret(page);
+            blackhole.consume(page.getIdentifier());
+        }
+    }
+
+    @Benchmark
+    public void windowedPageInterpreter(Blackhole blackhole) {
+        for (int pageNum = 0; pageNum < texts.size(); pageNum++) {
+            ComponentPage page = new ComponentPage(null, texts.get(pageNum), pageNum);
+            windowedInterpreter.interpret(page);
+            blackhole.consume(page.getIdentifier());
+        }
+    }
+
+    @Benchmark
+    public void completeIdentifier(Blackhole blackhole) {
+        for (ComponentPage page : interpreted) {
+            blackhole.consume(page.getCompleteIdentifier());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.io.RandomAccessReadMemoryMappedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading the source document, as done once per run (and once per worker by
+ * the parallel engine)
+ *
+ * @author pmreid
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Benchmark
+    public int loadBuffered(SyntheticSource source) throws IOException {
+        try (PDDocument doc = Loader.loadPDF(new RandomAccessReadBufferedFile(source.file))) {
+            return doc.getNumberOfPages();
+        }
+    }
+
+    @Benchmark
+    public int loadMemoryMapped(SyntheticSource source) throws IOException {
+        try (PDDocument doc = Loader.loadPDF(new RandomAccessReadMemoryMappedFile(source.file))) {
+            return doc.getNumberOfPages();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import java.io.IOException;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The synthetic source, loaded once per benchmark thread, for the benchmarks
+ * of the work done on each page. Hands out the pages in turn, so that every
+ * page of the batch is exercised.
+ *
+ * @author pmreid
+ */
+@State(Scope.Thread)
+public class LoadedSource {
+
+    public PDDocument doc;
+    private int nextPage;
+
+    @Setup(Level.Trial)
+    public void load(SyntheticSource source) throws IOException {
+        doc = Loader.loadPDF(source.file);
+    }
+
+    /**
+     * @return number of the next page to work on, starting at 0
+     */
+    public int nextPage() {
+        int pageNum = nextPage;
+        nextPage = (nextPage + 1) % doc.getNumberOfPages();
+        return pageNum;
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        doc.close();
+    }
+}
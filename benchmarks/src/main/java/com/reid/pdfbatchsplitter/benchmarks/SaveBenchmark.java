@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import com.reid.pdfbatchsplitter.service.PageImporter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PDDocument.save of a split-out page, against exporting the same page
+ * through PageImporter in compact mode (which saves it too)
+ *
+ * @author pmreid
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveBenchmark {
+
+    private List<PDDocument> pages; // every page of the source, already split out
+    private PageImporter importer;
+    private int nextPage;
+
+    @Setup(Level.Trial)
+    public void split(LoadedSource source) throws IOException {
+        pages = new Splitter().split(source.doc);
+        importer = new PageImporter();
+    }
+
+    @Benchmark
+    public int saveSplitPage() throws IOException {
+        PDDocument page = pages.get(nextPage);
+        nextPage = (nextPage + 1) % pages.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        page.save(out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int exportCompactPage(LoadedSource source) throws IOException {
+        return importer.exportPage(source.doc, source.nextPage(), null).length;
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        for (PDDocument page : pages) {
+            page.close();
+        }
+        importer.close();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splitter.split: the whole document at once, as readPDF() does, against a
+ * single page at a time, as the streaming and parallel engines do
+ *
+ * @author pmreid
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitBenchmark {
+
+    @Benchmark
+    public int splitWholeDocument(LoadedSource source) throws IOException {
+        List<PDDocument> pages = new Splitter().split(source.doc);
+        for (PDDocument page : pages) {
+            page.close();
+        }
+        return pages.size();
+    }
+
+    @Benchmark
+    public int splitOnePage(LoadedSource source) throws IOException {
+        int pageNum = source.nextPage();
+        Splitter splitter = new Splitter();
+        splitter.setStartPage(pageNum + 1); // Splitter pages start at 1
+        splitter.setEndPage(pageNum + 1);
+        try (PDDocument page = splitter.split(source.doc).get(0)) {
+            return page.getNumberOfPages();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+/**
+ * Builds synthetic batch PDFs like the ones the splitter is used on: one page
+ * per candidate, each with an admission number, candidate number, UPN and
+ * name for the default SearchTerms to find, followed by a configurable
+ * number of lines of filler text. The same arguments always give the same
+ * document, so benchmark results can be reproduced without any real data.
+ *
+ * Can also be run on its own to produce a test batch:
+ * SyntheticPdfGenerator &lt;output.pdf&gt; &lt;pages&gt; &lt;filler lines per page&gt;
+ *
+ * @author pmreid
+ */
+public class SyntheticPdfGenerator {
+
+    private static final String[] SURNAMES = {"Smith", "Jones", "Taylor", "Brown", "Williams", "Wilson", "Johnson", "Davies", "Patel", "Wright"};
+    private static final String[] FORENAMES = {"Oliver", "Amelia", "Jack", "Isla", "Harry", "Ava", "Mohammed", "Emily", "Noah", "Sophie"};
+    private static final String[] SUBJECTS = {"Mathematics", "English Language", "Biology", "Chemistry", "Physics", "History", "Geography", "French"};
+
+    /**
+     * main method, to generate a batch from the command line
+     *
+     * @param args output file, number of pages and filler lines per page
+     * @throws IOException if the batch can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: SyntheticPdfGenerator <output.pdf> <pages> <filler lines per page>");
+            System.exit(2);
+        }
+        generate(new File(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+    }
+
+    /**
+     * Generates a synthetic batch
+     *
+     * @param output file to write the batch to
+     * @param pages number of pages, one per candidate
+     * @param density lines of filler text per page, after the identifiers;
+     * about 45 fill an A4 page, and more run on past the bottom of the page
+     * as they would in a dense timetable
+     * @throws IOException if the batch can't be written
+     */
+    public static void generate(File output, int pages, int density) throws IOException {
+        Random random = new Random(pages * 31L + density); // same arguments, same document
+        try (PDDocument doc = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int i = 0; i < pages; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(40, 800);
+                    // the identifiers, with each label after its value as they come out of the real batches:
+                    content.showText(String.format("%06d", 100000 + i) + " Admission Number");
+                    content.newLine();
+                    content.showText(String.format("%04d", 1000 + i % 9000) + "Candidate Number");
+                    content.newLine();
+                    content.showText(String.format("UPN: %c%012d", (char) ('A' + i % 26), Math.abs(random.nextLong() % 1000000000000L)));
+                    content.newLine();
+                    content.showText(SURNAMES[random.nextInt(SURNAMES.length)] + ", " + FORENAMES[random.nextInt(FORENAMES.length)] + "Name");
+                    for (int line = 0; line < density; line++) {
+                        content.newLine();
+                        content.showText(String.format("%s Paper %d  %02d/06  %s  %d mins  Room %d  Seat %c%d",
+                                SUBJECTS[random.nextInt(SUBJECTS.length)], 1 + random.nextInt(3), 1 + random.nextInt(28),
+                                random.nextBoolean() ? "AM" : "PM", 45 + 15 * random.nextInt(8), 1 + random.nextInt(20),
+                                (char) ('A' + random.nextInt(12)), 1 + random.nextInt(30)));
+                    }
+                    content.endText();
+                }
+            }
+            doc.save(output);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A synthetic source batch, generated once per trial, shared by the
+ * benchmarks. The page count and text density can be varied from the JMH
+ * command line, eg -p pages=500 -p density=100
+ *
+ * @author pmreid
+ */
+@State(Scope.Benchmark)
+public class SyntheticSource {
+
+    @Param({"50"})
+    public int pages;
+
+    @Param({"20", "120"})
+    public int density; // lines of filler text per page
+
+    public File file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        file = File.createTempFile("pdfbatchsplitter-benchmark-", ".pdf");
+        SyntheticPdfGenerator.generate(file, pages, density);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.benchmarks;
+
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import com.reid.pdfbatchsplitter.service.PageTextExtractor;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extracting the text of one page: PDFTextStripper.getText on its own, and
+ * PageTextExtractor with the default SearchTerms, eagerly and lazily
+ *
+ * @author pmreid
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TextExtractionBenchmark {
+
+    private PDFTextStripper stripper;
+    private PageTextExtractor extractor;
+    private PageTextExtractor lazyExtractor;
+
+    @Setup(Level.Trial)
+    public void createExtractors() throws IOException {
+        stripper = new PDFTextStripper();
+        extractor = new PageTextExtractor(SearchTerm.getDefaults(), false);
+        lazyExtractor = new PageTextExtractor(SearchTerm.getDefaults(), true);
+    }
+
+    @Benchmark
+    public String getTextPerPage(LoadedSource source) throws IOException {
+        int pageNum = source.nextPage();
+        stripper.setStartPage(pageNum + 1);
+        stripper.setEndPage(pageNum + 1);
+        return stripper.getText(source.doc);
+    }
+
+    @Benchmark
+    public String pageTextExtractor(LoadedSource source) throws IOException {
+        return extractor.extract(source.doc, source.nextPage(), false).getPageContents();
+    }
+
+    @Benchmark
+    public String lazyPageTextExtractor(LoadedSource source) throws IOException {
+        return lazyExtractor.extract(source.doc, source.nextPage(), false).getPageContents();
+    }
+}
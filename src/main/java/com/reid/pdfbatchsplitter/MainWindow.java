@@ -16,6 +16,7 @@
  */
 package com.reid.pdfbatchsplitter;
 
+import com.reid.pdfbatchsplitter.domain.SplitProgress;
 import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,7 +46,7 @@ public class MainWindow extends javax.swing.JFrame {
      * Simple helper method to populate the JTable with basic search terms
      */
     private void populateSearchTable() {
-        List<String> columns = new ArrayList<>(Arrays.asList("Name", "Regular expression pattern", "Target group"));
+        List<String> columns = new ArrayList<>(Arrays.asList("Name", "Regular expression pattern", "Target group", "Region (x,y,w,h)"));
         String[][] rows = new String[PDFBatchSplitter.search.size()][];
         int i = 0;
         for (SearchTerm t : PDFBatchSplitter.search) {
@@ -53,6 +54,7 @@ public class MainWindow extends javax.swing.JFrame {
             rows[i][0] = t.getLabel();
             rows[i][1] = t.getRegex();
             rows[i][2] = String.valueOf(t.getOutputGroup());
+            rows[i][3] = SearchTerm.formatRegion(t.getRegion());
             i++;
         }
         TableModel tableModel = new DefaultTableModel(rows, columns.toArray());
@@ -84,6 +86,7 @@ public class MainWindow extends javax.swing.JFrame {
         jButtonSplitPDF = new javax.swing.JButton();
         jTextPrefix = new javax.swing.JTextField();
         jLabelPrefix = new javax.swing.JLabel();
+        jCheckBoxTextCache = new javax.swing.JCheckBox();
         jButtonDeleteRule = new javax.swing.JButton();
         jButtonNewSearchTerm = new javax.swing.JButton();
 
@@ -163,6 +166,9 @@ public class MainWindow extends javax.swing.JFrame {
         jLabelPrefix.setLabelFor(jTextPrefix);
         jLabelPrefix.setText("Prefix: ");
 
+        jCheckBoxTextCache.setText("Cache page text");
+        jCheckBoxTextCache.setToolTipText("Keep the text of each page (up to 256 MB in your home directory), so re-running the batch with different search terms is quicker");
+
         jButtonDeleteRule.setText("Delete search term");
         jButtonDeleteRule.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
@@ -202,7 +208,8 @@ public class MainWindow extends javax.swing.JFrame {
                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
                                     .addComponent(jButtonSelectSource, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                                    .addComponent(jButtonSetDestination, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))))
+                                    .addComponent(jButtonSetDestination, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                                    .addComponent(jCheckBoxTextCache, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))))
                         .addComponent(jLabelSampleOutput, javax.swing.GroupLayout.Alignment.LEADING, javax.swing.GroupLayout.PREFERRED_SIZE, 392, javax.swing.GroupLayout.PREFERRED_SIZE))
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(jButtonNewSearchTerm, javax.swing.GroupLayout.PREFERRED_SIZE, 260, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -228,7 +235,8 @@ public class MainWindow extends javax.swing.JFrame {
                 .addGap(18, 18, 18)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jTextPrefix, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                    .addComponent(jLabelPrefix))
+                    .addComponent(jLabelPrefix)
+                    .addComponent(jCheckBoxTextCache))
                 .addGap(18, 18, 18)
                 .addComponent(jLabelSearchTermsTable)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
@@ -269,7 +277,7 @@ public class MainWindow extends javax.swing.JFrame {
             // first, attempt to populate the search terms entity
             List<SearchTerm> terms = updateSearchTerms();
             PDFBatchSplitter.search = terms;
-            PDFBatchSplitter.processBatch(this.jTextPrefix.getText());
+            PDFBatchSplitter.processBatch(this.jTextPrefix.getText(), this.jCheckBoxTextCache.isSelected());
         } catch (Exception ex) {
             PDFBatchSplitter.outputExceptionToUser(ex);
         }
@@ -277,7 +285,7 @@ public class MainWindow extends javax.swing.JFrame {
 
     private void jButtonNewSearchTermActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonNewSearchTermActionPerformed
         DefaultTableModel model = (DefaultTableModel) this.jTableSearchTerms.getModel();
-        model.addRow(new Object[]{"", "", ""});
+        model.addRow(new Object[]{"", "", "", ""});
     }//GEN-LAST:event_jButtonNewSearchTermActionPerformed
 
     private void jButtonDeleteRuleActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonDeleteRuleActionPerformed
@@ -298,7 +306,8 @@ public class MainWindow extends javax.swing.JFrame {
         List<SearchTerm> terms = new ArrayList<>();
         DefaultTableModel model = (DefaultTableModel) this.jTableSearchTerms.getModel();
         for (int i = 0; i < model.getRowCount(); i++) {
-            SearchTerm t = new SearchTerm(String.valueOf(model.getValueAt(i, 0)), String.valueOf(model.getValueAt(i, 1)), Integer.parseInt((String) model.getValueAt(i, 2)));
+            SearchTerm t = new SearchTerm(String.valueOf(model.getValueAt(i, 0)), String.valueOf(model.getValueAt(i, 1)), Integer.parseInt((String) model.getValueAt(i, 2)),
+                    SearchTerm.parseRegion((String) model.getValueAt(i, 3))); // an empty region searches the whole page
             terms.add(t);
         }
         if (!terms.isEmpty()) {
@@ -320,6 +329,20 @@ public class MainWindow extends javax.swing.JFrame {
         this.jTextAreaSampleOutput.setSelectionEnd(0);
     }
 
+    /**
+     * Shows the progress of a batch in the window title
+     *
+     * @param progress latest progress, or null once the batch has stopped
+     */
+    public void updateProgress(SplitProgress progress) {
+        if (progress == null || progress.isFinished()) {
+            this.setTitle("PDFBatchSplitter");
+        } else {
+            this.setTitle(String.format("PDFBatchSplitter - %d%% (%d of %d pages)", Math.round(progress.getFractionDone() * 100),
+                    progress.getPagesWritten(), progress.getTotalPages()));
+        }
+    }
+
     /**
      * Simple helper method to disable UI elements after a batch process has
      * completed, but keeping the sample output pane at the bottom active for
@@ -333,6 +356,7 @@ public class MainWindow extends javax.swing.JFrame {
         this.jButtonSplitPDF.setEnabled(false);
         this.jButtonDeleteRule.setEnabled(false);
         this.jButtonNewSearchTerm.setEnabled(false);
+        this.jCheckBoxTextCache.setEnabled(false);
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -341,6 +365,7 @@ public class MainWindow extends javax.swing.JFrame {
     private javax.swing.JButton jButtonSelectSource;
     private javax.swing.JButton jButtonSetDestination;
     private javax.swing.JButton jButtonSplitPDF;
+    private javax.swing.JCheckBox jCheckBoxTextCache;
     private javax.swing.JLabel jLabelDestinationDir;
     private javax.swing.JLabel jLabelPrefix;
     private javax.swing.JLabel jLabelSampleOutput;
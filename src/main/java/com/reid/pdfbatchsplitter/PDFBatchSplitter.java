@@ -16,20 +16,31 @@
  */
 package com.reid.pdfbatchsplitter;
 
+import com.reid.pdfbatchsplitter.domain.SplitProgress;
 import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
 import com.reid.pdfbatchsplitter.service.PDFSplitter;
+import com.reid.pdfbatchsplitter.service.PageTextCache;
+import com.reid.pdfbatchsplitter.service.SplitCancelledException;
+import java.awt.BorderLayout;
 import java.awt.FileDialog;
 import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
@@ -42,6 +53,10 @@ public class PDFBatchSplitter {
     public static final String DEFAULT_SEPARATOR = "_";
     public static MainWindow mw;
     private static JFrame processingFrame;
+    private static JProgressBar progressBar; // progress of the current batch, in processingFrame
+    private static JLabel progressLabel;
+    private static JButton cancelButton;
+    private static volatile PDFSplitter activeSplitter; // the batch in progress, so that it can be cancelled
     public static List<SearchTerm> search;
     private static File sourceFile;
     private static File destinationFile;
@@ -75,14 +90,7 @@ public class PDFBatchSplitter {
      * sample uses
      */
     private static void addSearchTerms() {
-        search = new ArrayList<>();
-        search.add(new SearchTerm("Admission Number", "([0-9]{5,6}).*(Admission Number)", 1));
-        search.add(new SearchTerm("Candidate Number", "([0-9]{4})(Candidate Number)", 1));
-        search.add(new SearchTerm("Candidate Number", "([0-9]{4})\\s[\\s\\S]*[0-9]{10}[a-zA-Z][\\s\\S]*(Candidate Number)", 1));
-        search.add(new SearchTerm("UPN", "(UPN:?)[\\s\\S]:?([a-zA-Z0-9]+)", 2));
-        //search.add(new SearchTerm("ULN", "(ULN:?)[\\s\\S]:?([0-9]+)", 2));
-        //search.add(new SearchTerm("ULN", "([0-9]{10})(ULN)", 1));
-        search.add(new SearchTerm("Name", "([a-zA-Z]+\\-?[a-zA-Z]+,\\s[a-zA-Z]+\\-?[a-zA-Z]+?)(Name)", 1));
+        search = new ArrayList<>(SearchTerm.getDefaults());
     }
 
     /**
@@ -91,10 +99,12 @@ public class PDFBatchSplitter {
      * to initiate the splitting process
      *
      * @param prefix text to prepend to destination filenames.
+     * @param cacheText true to keep the text of each page in the text cache,
+     * so that re-running the batch skips text extraction
      * @throws Exception User-friendly exception if basic checks on parameters
      * fail
      */
-    public static void processBatch(String prefix) throws Exception {
+    public static void processBatch(String prefix, final boolean cacheText) throws Exception {
         /*
         First check that the source, destination, prefix and search terms are valid
         The validity of the paths etc is checked in PDFSplitter, but we need to at least ensure they are non-null
@@ -106,30 +116,66 @@ public class PDFBatchSplitter {
         } else if (search == null || search.isEmpty()) {
             throw new Exception("There were no search terms to find");
         }
+        progressBar.setValue(0);
+        progressLabel.setText("Starting...");
+        cancelButton.setEnabled(true);
         processingFrame.setVisible(true);
         // new Thread for the split process, to reduce GUI lag:
         Thread splitterThread = new Thread(new Runnable() {
             public void run() {
                 PDFSplitter splitter;
+                PageTextCache cache = cacheText ? openTextCache() : null; // opt-in, as the cache can take up to 256 MB of disk
                 try {
-                    splitter = new PDFSplitter(sourceFile, destinationFile, search, escapePrefix(prefix), suffix, true);
-                    splitter.readPDF(); // read PDFs into variables
-                    splitter.interpretPDFPages(); // extract identifiers
+                    splitter = new PDFSplitter(sourceFile, destinationFile, search, PDFSplitter.escapePrefix(prefix), suffix, true);
+                    splitter.setTextViewer(mw::updatePDFViewer);
+                    splitter.setWorkerCount(Runtime.getRuntime().availableProcessors()); // one worker per core
+                    splitter.setTextCache(cache); // re-running a batch with different search terms skips text extraction
+                    splitter.setProgressListener(progress -> SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            showProgress(progress);
+                        }
+                    }));
+                    activeSplitter = splitter;
 
-                    //We then initiate the batch writing process:
-                    if (splitter.writeBatch()) {
+                    // pages are read, interpreted and written without holding the whole batch in memory:
+                    if (splitter.process()) {
                         // success
                         processingFrame.dispose();
-                        PDFBatchSplitter.outputMessageToUser("Wrote " + splitter.getPageCount() + " PDF files to destination: " + splitter.getDestinationAsString());
+                        PDFBatchSplitter.outputMessageToUser("Wrote " + splitter.getPageCount() + " PDF files to destination: " + splitter.getDestinationAsString()
+                                + (splitter.getResumedCount() > 0 ? "\n(" + splitter.getResumedCount() + " of them were written by an earlier, interrupted run)" : "")
+                                + (splitter.getMetrics().getCollisionCount() > 0 ? "\n" + splitter.getMetrics().getCollisionCount()
+                                + " pages had the same identifier as an earlier page, so were written with a counter added to their filename" : ""));
                         mw.disableElements();
                     } else {
                         // fail
                         processingFrame.dispose();
                         PDFBatchSplitter.outputExceptionToUser(new Exception("Error writing PDF files to disk..."));
                     }
+                } catch (SplitCancelledException ex) {
+                    processingFrame.dispose();
+                    PDFBatchSplitter.outputMessageToUser("The batch was cancelled. Pages already written have been recorded; "
+                            + "running the batch again will carry on from where it stopped.");
                 } catch (IOException ex) {
-                    PDFBatchSplitter.outputExceptionToUser(ex);
-                    System.exit(1);
+                    // the pages written so far are kept in the destination's checkpoint journal, so the batch can simply be run again:
+                    processingFrame.dispose();
+                    PDFBatchSplitter.outputExceptionToUser(new IOException(ex.getLocalizedMessage()
+                            + "\nPages already written have been recorded; running the batch again will carry on from where it stopped.", ex));
+                } finally {
+                    activeSplitter = null;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            mw.updateProgress(null);
+                        }
+                    });
+                    if (cache != null) {
+                        try {
+                            cache.close();
+                        } catch (IOException ex) {
+                            // nothing is lost; the cache is rebuilt from its file next time
+                        }
+                    }
                 }
             }
         });
@@ -137,14 +183,31 @@ public class PDFBatchSplitter {
     }
 
     /**
-     * Simple helper method to escape white space characters from the supplied
-     * prefix
+     * Shows the progress of the batch in the processing window and the main
+     * window's title; must be called on the event dispatch thread
      *
-     * @param p User-entered prefix
-     * @return Cleansed prefix
+     * @param progress latest progress of the batch
      */
-    private static String escapePrefix(String p) {
-        return p.replaceAll("[^A-Za-z0-9]", "");
+    private static void showProgress(SplitProgress progress) {
+        progressBar.setValue((int) Math.round(progress.getFractionDone() * 100));
+        progressLabel.setText(progress.toString());
+        mw.updateProgress(progress);
+    }
+
+    /**
+     * Opens the text cache in the user's home directory, which lets a batch
+     * be re-run (eg after changing a search term) without extracting its
+     * text again
+     *
+     * @return open cache, or null if it can't be opened (eg another copy of
+     * the application is using it), in which case every page is extracted
+     */
+    private static PageTextCache openTextCache() {
+        try {
+            return new PageTextCache(PageTextCache.getDefaultDirectory(), PageTextCache.DEFAULT_MAX_BYTES);
+        } catch (IOException ex) {
+            return null;
+        }
     }
 
     /**
@@ -297,7 +360,29 @@ public class PDFBatchSplitter {
         ImageIcon loading = new ImageIcon(PDFBatchSplitter.class
                 .getResource("/com/reid/pdfbatchsplitter/res/loading.gif"));
         // loading image courtesy of https://tenor.com/en-GB/view/loading-gif-26545612
-        processingFrame.add(new JLabel(" processing...", loading, JLabel.CENTER));
+        processingFrame.add(new JLabel(" processing...", loading, JLabel.CENTER), BorderLayout.CENTER);
+        // progress of the batch, and a way to stop it:
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressLabel = new JLabel(" ", JLabel.CENTER);
+        cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                PDFSplitter splitter = activeSplitter;
+                if (splitter != null) {
+                    splitter.cancel(); // the splitter thread reports back once the source has been closed
+                    cancelButton.setEnabled(false);
+                    progressLabel.setText("Cancelling...");
+                }
+            }
+        });
+        JPanel progressPanel = new JPanel(new BorderLayout(5, 5));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 10, 10));
+        progressPanel.add(progressBar, BorderLayout.NORTH);
+        progressPanel.add(progressLabel, BorderLayout.CENTER);
+        progressPanel.add(cancelButton, BorderLayout.SOUTH);
+        processingFrame.add(progressPanel, BorderLayout.SOUTH);
         /*
         Hat-tip https://stackoverflow.com/questions/7634402/creating-a-nice-loading-animation
          */
@@ -0,0 +1,691 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter;
+
+import com.reid.pdfbatchsplitter.domain.PageProfile;
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import com.reid.pdfbatchsplitter.service.ArchiveFormat;
+import com.reid.pdfbatchsplitter.service.BatchJobResult;
+import com.reid.pdfbatchsplitter.service.BatchJobScheduler;
+import com.reid.pdfbatchsplitter.service.BlankPageDetector;
+import com.reid.pdfbatchsplitter.service.BlankPagePolicy;
+import com.reid.pdfbatchsplitter.service.DuplicateStrategy;
+import com.reid.pdfbatchsplitter.service.MemoryPolicy;
+import com.reid.pdfbatchsplitter.service.PDFSplitter;
+import com.reid.pdfbatchsplitter.service.PageRecogniser;
+import com.reid.pdfbatchsplitter.service.PageTextCache;
+import com.reid.pdfbatchsplitter.service.RunMetrics;
+import com.reid.pdfbatchsplitter.service.SplitCancelledException;
+import com.reid.pdfbatchsplitter.service.TesseractOcrEngine;
+import com.reid.pdfbatchsplitter.service.WatchFolderService;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless command-line entry point, which drives PDFSplitter directly. Unlike
+ * PDFBatchSplitter it never touches Swing, so it can run on servers without a
+ * display and starts without the cost of building a user interface.
+ *
+ * Settings can be given as arguments, in a properties file with --config, or
+ * both; arguments take precedence over the file.
+ *
+ * @author pmreid
+ */
+public class PDFBatchSplitterCLI {
+
+    private static final String USAGE = "Usage: java -cp PDFBatchSplitter.jar com.reid.pdfbatchsplitter.PDFBatchSplitterCLI [options]\n"
+            + "  --config <file>           properties file holding any of the settings below\n"
+            + "  --source <file>           PDF to split (source)\n"
+            + "  --input-dir <dir>         split every matching PDF in a directory instead of one source (inputDir)\n"
+            + "  --watch <dir>             keep running, splitting each PDF dropped into a directory (watch)\n"
+            + "  --archive <dir>           where --watch moves each source once it is split (archive)\n"
+            + "  --settle-ms <n>           how long a dropped file must stay unchanged before it is split, default 2000 (settleMillis)\n"
+            + "  --glob <pattern>          file names to split in --input-dir or --watch, default *.pdf (glob)\n"
+            + "  --jobs <n>                number of pages to process at once across --input-dir, default one per core (jobs)\n"
+            + "  --large-file-mb <n>       sources at least this big are split one at a time with all the jobs, default 20 (largeFileMB)\n"
+            + "  --destination <dir>       directory to write the pages to; with --input-dir, each source gets a sub-directory (destination)\n"
+            + "  --prefix <text>           prefix for the output filenames (prefix)\n"
+            + "  --suffix <text>           suffix for the output filenames, default pdf (suffix)\n"
+            + "  --term <label> <regex> <group>\n"
+            + "                            search term; repeat for more, the first is the primary identifier\n"
+            + "                            (term.N.label, term.N.regex, term.N.group)\n"
+            + "  --region <x,y,w,h>        restrict the preceding --term to a region of the page (term.N.region)\n"
+            + "  --workers <n>             number of pages to process at once, default 1 (workers)\n"
+            + "  --match-window <n>        characters either side of a term's anchor to search (matchWindow)\n"
+            + "  --match-budget-ms <n>     time allowed for matching the terms against a page; pages over it\n"
+            + "                            are written as failed to read and listed in the reports (matchBudgetMillis)\n"
+            + "  --group                   write each run of pages with the same primary identifier as one file (group)\n"
+            + "  --start-term <regex>      with --group, also start a new file at each page matching regex (startTerm)\n"
+            + "  --duplicates <strategy>   when two pages have the same identifier: suffix-counter, merge or fail,\n"
+            + "                            default suffix-counter (duplicates)\n"
+            + "  --blank-pages <policy>    what to do with blank pages and separator sheets: keep, drop, or boundary\n"
+            + "                            to drop them and end the --group document before them, default keep (blankPages)\n"
+            + "  --separator-term <regex>  pages matching regex are separator sheets (separatorTerm)\n"
+            + "  --blank-render-dpi <n>    render scanned pages with no text at this resolution to see if they are blank,\n"
+            + "                            eg 30; default 0 only drops pages that draw nothing much (blankRenderDpi)\n"
+            + "  --blank-max-ink <f>       fraction of a rendered page that may be inked for it to be blank,\n"
+            + "                            default 0.002 (blankMaxInk)\n"
+            + "  --pre-scan                classify pages from their content streams first, so pages with no text\n"
+            + "                            are not extracted and only as many workers as needed are used (preScan)\n"
+            + "  --ocr                     recognise pages with no text layer that couldn't be read using OCR;\n"
+            + "                            results are kept in the text cache, its default directory if none is given (ocr)\n"
+            + "  --ocr-command <path>      tesseract executable, default tesseract (ocrCommand)\n"
+            + "  --ocr-language <lang>     tesseract language, default eng (ocrLanguage)\n"
+            + "  --ocr-dpi <n>             resolution to render pages at for OCR, default 300 (ocrDpi)\n"
+            + "  --ocr-region <x,y,w,h>    recognise only this region of the page, in points (ocrRegion)\n"
+            + "  --ocr-threads <n>         OCR engine processes to run at once, default one per core (ocrThreads)\n"
+            + "  --ocr-in-flight <n>       rendered pages that may wait for OCR, default two per core (ocrInFlight)\n"
+            + "  --lazy                    stop extracting a page once every term has matched (lazy)\n"
+            + "  --compact                 export pages with only the resources they use (compact)\n"
+            + "  --memory <policy>         where PDFBox keeps document streams: heap, mixed or scratch, default heap (memory)\n"
+            + "  --memory-limit-mb <n>     heap allowed per document for heap or mixed (memoryLimitMB)\n"
+            + "  --scratch-dir <dir>       directory for the temporary files of mixed or scratch (scratchDir)\n"
+            + "  --mmap                    read the source through a memory-mapped file (mmap)\n"
+            + "  --text-cache <dir>        cache extracted page text here, so reruns of a source skip extraction (textCache)\n"
+            + "  --text-cache-mb <n>       size limit of the text cache, default 256 (textCacheMB)\n"
+            + "  --skip-unchanged          don't rewrite output files whose contents would be the same (skipUnchanged)\n"
+            + "  --report-json <file>      write a JSON report of per-stage and per-term timings (reportJson)\n"
+            + "  --report-csv <file>       append a row of timings per source to a CSV file (reportCsv)\n"
+            + "  --jmx                     publish the metrics of each run over JMX (jmx)\n"
+            + "  --progress                show the progress of the split (progress)\n"
+            + "  --restart                 ignore the journal of an interrupted run and write every page again (restart)\n"
+            + "  --output-archive <format> stream the PDF files into a zip, tar or tar-gz archive named after the source\n"
+            + "                            instead of writing them as separate files (outputArchive)\n"
+            + "  --archive-level <n>       compression level of zip and tar-gz archives, 0 to 9 (archiveLevel)\n"
+            + "  --archive-pages <n>       start a new, numbered archive after this many pages (archivePages)\n"
+            + "  --writers <n>             threads writing pages to the destination, default 0 (writers)\n"
+            + "  --write-queue <n>         pages that may wait to be written, default 64 (writeQueue)\n"
+            + "If no search terms are given, the same defaults as the desktop application are used.";
+
+    /**
+     * main method of the command-line application
+     *
+     * @param args command-line options; see USAGE
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.setProperty("org.apache.commons.logging.Log", "org.apache.commons.logging.impl.NoOpLog"); // prevents superfluous logging by Apache PDFBox
+        Properties settings = new Properties();
+        try {
+            parseArguments(args, settings);
+        } catch (IllegalArgumentException | IOException ex) {
+            System.err.println(ex.getLocalizedMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            System.exit(run(settings));
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("An error occurred: " + ex.getLocalizedMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Splits the source PDF, or directory of them, as described by the
+     * settings, sharing one text cache between all the sources if one is set
+     *
+     * @param settings populated settings
+     * @return process exit code; 0 on success
+     * @throws IOException if the batch could not be split
+     */
+    private static int run(Properties settings) throws IOException {
+        PageTextCache cache = null;
+        if (settings.getProperty("textCache") != null) {
+            cache = new PageTextCache(new File(settings.getProperty("textCache")), getInt(settings, "textCacheMB", 256) * 1024L * 1024L);
+        } else if (Boolean.parseBoolean(settings.getProperty("ocr", "false"))) {
+            cache = new PageTextCache(PageTextCache.getDefaultDirectory(), getInt(settings, "textCacheMB", 256) * 1024L * 1024L); // OCR is too slow to repeat
+        }
+        try {
+            if (settings.getProperty("watch") != null) {
+                return runWatchFolder(settings, cache);
+            }
+            if (settings.getProperty("inputDir") != null) {
+                return runDirectory(settings, cache);
+            }
+            return runSingle(settings, cache);
+        } finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+    }
+
+    /**
+     * Splits a single source PDF as described by the settings
+     *
+     * @param settings populated settings
+     * @param cache text cache, or null
+     * @return process exit code; 0 on success
+     * @throws IOException if the batch could not be split
+     */
+    private static int runSingle(Properties settings, PageTextCache cache) throws IOException {
+        String prefix = required(settings, "prefix");
+        PDFSplitter splitter = new PDFSplitter(new File(required(settings, "source")), new File(required(settings, "destination")),
+                getSearchTerms(settings), PDFSplitter.escapePrefix(prefix), settings.getProperty("suffix", "pdf"), false);
+        configure(splitter, settings, cache);
+        if (Boolean.parseBoolean(settings.getProperty("progress", "false"))) {
+            splitter.setProgressListener(progress -> System.err.print("\r" + progress + (progress.isFinished() ? "\n" : "   ")));
+        }
+        // stopping the process (eg with Ctrl-C) cancels the split cleanly, so that it can be resumed:
+        final CountDownLatch finished = new CountDownLatch(1);
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                splitter.cancel();
+                try {
+                    finished.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(canceller);
+        boolean success;
+        try {
+            success = splitter.process();
+        } catch (SplitCancelledException ex) {
+            System.err.println();
+            System.err.println("Cancelled after " + splitter.getMetrics().getPageCount() + " pages; run again to carry on from there");
+            return 130;
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(canceller);
+            } catch (IllegalStateException ex) {
+                // already shutting down
+            }
+            try {
+                writeReports(settings, Collections.singletonList(splitter.getMetrics()));
+            } finally {
+                finished.countDown();
+            }
+        }
+        if (success) {
+            System.out.println("Wrote " + splitter.getPageCount() + " PDF files to destination: " + splitter.getDestinationAsString());
+            if (!splitter.getArchives().isEmpty()) {
+                System.out.println("in " + splitter.getArchives().size() + (splitter.getArchives().size() == 1 ? " archive: " : " archives, the first: ")
+                        + splitter.getArchives().get(0).getName());
+            }
+            if (splitter.getResumedCount() > 0) {
+                System.out.println(splitter.getResumedCount() + " of them had already been written by an interrupted run");
+            }
+            if (splitter.getUnchangedCount() > 0) {
+                System.out.println(splitter.getUnchangedCount() + " of them were unchanged and left as they were");
+            }
+            if (splitter.isPreScan()) {
+                RunMetrics metrics = splitter.getMetrics();
+                System.out.println("Pre-scan found " + metrics.getPageKindCount(PageProfile.Kind.TEXT) + " text, "
+                        + metrics.getPageKindCount(PageProfile.Kind.MIXED) + " mixed, " + metrics.getPageKindCount(PageProfile.Kind.IMAGE_ONLY)
+                        + " image-only and " + metrics.getPageKindCount(PageProfile.Kind.BLANK) + " blank pages; "
+                        + splitter.getWorkersUsed() + " of " + splitter.getWorkerCount() + " workers used");
+            }
+            if (splitter.getMetrics().getDroppedPageCount() > 0) {
+                System.out.println(splitter.getMetrics().getDroppedPageCount() + " blank or separator pages were left out");
+            }
+            if (splitter.getRecognisedCount() > 0) {
+                System.out.println(splitter.getRecognisedCount() + " pages with no text layer were recognised using OCR");
+            }
+            if (splitter.getMetrics().getCollisionCount() > 0) {
+                System.err.println(splitter.getMetrics().getCollisionCount() + " pages had the same identifier as an earlier page:");
+                List<RunMetrics.Collision> collisions = splitter.getMetrics().getCollisions();
+                for (RunMetrics.Collision collision : collisions.subList(0, Math.min(20, collisions.size()))) {
+                    System.err.println("  page " + (collision.getPageNumber() + 1) + ", same as page " + (collision.getFirstPage() + 1)
+                            + ", written to " + collision.getWrittenAs());
+                }
+                if (collisions.size() > 20) {
+                    System.err.println("  ... (see --report-json)");
+                }
+            }
+            Map<Integer, String> overBudget = splitter.getMetrics().getOverBudgetPages();
+            if (!overBudget.isEmpty()) {
+                StringBuilder pageNumbers = new StringBuilder();
+                int listed = 0;
+                for (int pageNumber : overBudget.keySet()) {
+                    if (listed++ == 20) {
+                        pageNumbers.append(", ... (see --report-json)"); // the full list is in the report
+                        break;
+                    }
+                    pageNumbers.append(pageNumbers.length() > 0 ? ", " : "").append(pageNumber + 1);
+                }
+                System.err.println(overBudget.size() + " pages went over the match time budget and were written as failed to read: pages " + pageNumbers);
+            }
+            if (cache != null) {
+                System.out.println(String.format("%d cached texts used, %d extracted", cache.getHitCount(), cache.getMissCount()));
+            }
+            System.out.println(String.format("%d bytes written, %d bytes per page on average", splitter.getBytesWritten(),
+                    splitter.getPageCount() > 0 ? splitter.getBytesWritten() / splitter.getPageCount() : 0));
+            return 0;
+        } else {
+            System.err.println("Error writing PDF files to disk...");
+            return 1;
+        }
+    }
+
+    /**
+     * Splits every matching source PDF in a directory as described by the
+     * settings, printing a summary of the results
+     *
+     * @param settings populated settings
+     * @param cache text cache, or null
+     * @return process exit code; 0 if every source was split
+     * @throws IOException if the input directory cannot be read
+     */
+    private static int runDirectory(Properties settings, PageTextCache cache) throws IOException {
+        List<File> sources = BatchJobScheduler.findSources(new File(required(settings, "inputDir")), settings.getProperty("glob", "*.pdf"));
+        if (sources.isEmpty()) {
+            System.err.println("No matching source files were found");
+            return 1;
+        }
+        BatchJobScheduler scheduler = createScheduler(settings, cache);
+        long start = System.nanoTime();
+        List<BatchJobResult> results;
+        try {
+            results = scheduler.run(sources);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while splitting", ex);
+        }
+        System.out.println(BatchJobScheduler.summarise(results, System.nanoTime() - start));
+        List<RunMetrics> metrics = new ArrayList<>();
+        for (BatchJobResult result : results) {
+            if (result.getMetrics() != null) {
+                metrics.add(result.getMetrics());
+            }
+        }
+        writeReports(settings, metrics);
+        for (BatchJobResult result : results) {
+            if (!result.isSuccessful()) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Runs the watch-folder service until the process is asked to stop (eg by
+     * Ctrl-C), at which point any file being split is finished first
+     *
+     * @param settings populated settings
+     * @param cache text cache, or null
+     * @return process exit code
+     * @throws IOException if the drop directory cannot be watched
+     */
+    private static int runWatchFolder(Properties settings, PageTextCache cache) throws IOException {
+        final WatchFolderService service = new WatchFolderService(new File(required(settings, "watch")), new File(required(settings, "archive")),
+                createScheduler(settings, cache), settings.getProperty("glob", "*.pdf"));
+        service.setSettleMillis(getInt(settings, "settleMillis", 2000));
+        service.setResultListener(result -> {
+            System.out.println(result);
+            if (result.getMetrics() != null) {
+                try {
+                    writeReports(settings, Collections.singletonList(result.getMetrics()));
+                } catch (IOException ex) {
+                    System.err.println("Could not write the report: " + ex.getLocalizedMessage());
+                }
+            }
+        });
+        final CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                service.stop();
+                try {
+                    finished.await(); // let the file in progress finish before the JVM exits
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        System.out.println("Watching " + settings.getProperty("watch") + " for new PDFs...");
+        try {
+            service.run();
+        } finally {
+            finished.countDown();
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the reports asked for in the settings: the JSON report is
+     * replaced, while the CSV report gains a row per source
+     *
+     * @param settings populated settings
+     * @param metrics metrics of each source split
+     * @throws IOException if a report can't be written
+     */
+    private static void writeReports(Properties settings, List<RunMetrics> metrics) throws IOException {
+        if (settings.getProperty("reportJson") != null) {
+            RunMetrics.writeJson(metrics, new File(settings.getProperty("reportJson")));
+        }
+        if (settings.getProperty("reportCsv") != null) {
+            RunMetrics.appendCsv(metrics, new File(settings.getProperty("reportCsv")));
+        }
+    }
+
+    /**
+     * Creates a scheduler to split sources into sub-directories of the
+     * destination, as described by the settings
+     *
+     * @param settings populated settings
+     * @param cache text cache shared by all of the scheduler's jobs, or null
+     * @return configured scheduler
+     */
+    private static BatchJobScheduler createScheduler(final Properties settings, final PageTextCache cache) {
+        BatchJobScheduler scheduler = new BatchJobScheduler(new File(required(settings, "destination")), getSearchTerms(settings),
+                PDFSplitter.escapePrefix(required(settings, "prefix")), settings.getProperty("suffix", "pdf"));
+        scheduler.setPoolSize(getInt(settings, "jobs", Runtime.getRuntime().availableProcessors()));
+        scheduler.setLargeFileSize(getInt(settings, "largeFileMB", 20) * 1024L * 1024L);
+        scheduler.setConfigurer(splitter -> configure(splitter, settings, cache));
+        return scheduler;
+    }
+
+    /**
+     * Applies the optional tuning settings to a splitter
+     *
+     * @param splitter newly created PDFSplitter
+     * @param settings populated settings
+     * @param cache text cache, or null
+     */
+    private static void configure(PDFSplitter splitter, Properties settings, PageTextCache cache) {
+        splitter.setWorkerCount(getInt(settings, "workers", 1));
+        splitter.setMatchWindow(getInt(settings, "matchWindow", 0));
+        splitter.setMatchBudget(getInt(settings, "matchBudgetMillis", 0));
+        splitter.setLazyExtraction(Boolean.parseBoolean(settings.getProperty("lazy", "false")));
+        int memoryLimitMB = getInt(settings, "memoryLimitMB", -1);
+        try {
+            splitter.setMemoryPolicy(MemoryPolicy.valueOf(settings.getProperty("memory", "heap").trim().toUpperCase()),
+                    memoryLimitMB < 0 ? -1 : memoryLimitMB * 1024L * 1024L,
+                    settings.getProperty("scratchDir") == null ? null : new File(settings.getProperty("scratchDir")));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("The memory setting must be heap, mixed or scratch");
+        }
+        try {
+            splitter.setBlankPolicy(BlankPagePolicy.valueOf(settings.getProperty("blankPages", "keep").trim().toUpperCase()));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("The blankPages setting must be keep, drop or boundary");
+        }
+        if (settings.getProperty("separatorTerm") != null) {
+            splitter.setSeparatorTerm(new SearchTerm("Separator", settings.getProperty("separatorTerm"), 0));
+        }
+        BlankPageDetector detector = new BlankPageDetector();
+        detector.setRenderDpi(getInt(settings, "blankRenderDpi", 0));
+        detector.setMaxInk(getDouble(settings, "blankMaxInk", detector.getMaxInk()));
+        splitter.setBlankDetector(detector);
+        splitter.setPreScan(Boolean.parseBoolean(settings.getProperty("preScan", "false")));
+        splitter.setGroupPages(Boolean.parseBoolean(settings.getProperty("group", "false")));
+        if (settings.getProperty("startTerm") != null) {
+            splitter.setDocumentStartTerm(new SearchTerm("Start", settings.getProperty("startTerm"), 0));
+        }
+        try {
+            splitter.setDuplicateStrategy(DuplicateStrategy.valueOf(settings.getProperty("duplicates", "suffix-counter").trim().toUpperCase().replace('-', '_')));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("The duplicates setting must be suffix-counter, merge or fail");
+        }
+        if (Boolean.parseBoolean(settings.getProperty("ocr", "false"))) {
+            PageRecogniser recogniser = new PageRecogniser(
+                    new TesseractOcrEngine(settings.getProperty("ocrCommand", "tesseract"), settings.getProperty("ocrLanguage", "eng")),
+                    getInt(settings, "ocrDpi", 300), SearchTerm.parseRegion(settings.getProperty("ocrRegion")), cache);
+            recogniser.setThreads(getInt(settings, "ocrThreads", recogniser.getThreads()));
+            recogniser.setMaxInFlight(getInt(settings, "ocrInFlight", recogniser.getMaxInFlight()));
+            splitter.setRecogniser(recogniser);
+        }
+        if (settings.getProperty("outputArchive") != null) {
+            ArchiveFormat format;
+            try {
+                format = ArchiveFormat.valueOf(settings.getProperty("outputArchive").trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("The outputArchive setting must be zip, tar or tar-gz");
+            }
+            splitter.setArchiveOutput(format, getInt(settings, "archiveLevel", -1), getInt(settings, "archivePages", 0));
+        }
+        splitter.setMemoryMapped(Boolean.parseBoolean(settings.getProperty("mmap", "false")));
+        splitter.setTextCache(cache);
+        splitter.setSkipUnchanged(Boolean.parseBoolean(settings.getProperty("skipUnchanged", "false")));
+        splitter.setJmxEnabled(Boolean.parseBoolean(settings.getProperty("jmx", "false")));
+        splitter.setResume(!Boolean.parseBoolean(settings.getProperty("restart", "false")));
+        splitter.setCompactOutput(Boolean.parseBoolean(settings.getProperty("compact", "false")));
+        splitter.setWriterThreads(getInt(settings, "writers", 0));
+        splitter.setWriteQueueCapacity(getInt(settings, "writeQueue", 64));
+    }
+
+    /**
+     * Reads the command-line arguments into the settings, loading any
+     * --config file first so that the other arguments override it
+     *
+     * @param args command-line arguments
+     * @param settings Properties to populate
+     * @throws IOException if the config file cannot be read
+     */
+    private static void parseArguments(String[] args, Properties settings) throws IOException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("No arguments were supplied");
+        }
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--config")) {
+                try (InputStream in = new FileInputStream(args[i + 1])) {
+                    settings.load(in);
+                }
+            }
+        }
+        int terms = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--config":
+                    i++; // already loaded
+                    break;
+                case "--source":
+                case "--destination":
+                case "--prefix":
+                case "--suffix":
+                case "--workers":
+                case "--glob":
+                case "--jobs":
+                case "--watch":
+                case "--archive":
+                case "--writers":
+                case "--memory":
+                    settings.setProperty(arg.substring(2), value(args, ++i, arg));
+                    break;
+                case "--settle-ms":
+                    settings.setProperty("settleMillis", value(args, ++i, arg));
+                    break;
+                case "--memory-limit-mb":
+                    settings.setProperty("memoryLimitMB", value(args, ++i, arg));
+                    break;
+                case "--report-json":
+                    settings.setProperty("reportJson", value(args, ++i, arg));
+                    break;
+                case "--report-csv":
+                    settings.setProperty("reportCsv", value(args, ++i, arg));
+                    break;
+                case "--text-cache":
+                    settings.setProperty("textCache", value(args, ++i, arg));
+                    break;
+                case "--text-cache-mb":
+                    settings.setProperty("textCacheMB", value(args, ++i, arg));
+                    break;
+                case "--scratch-dir":
+                    settings.setProperty("scratchDir", value(args, ++i, arg));
+                    break;
+                case "--write-queue":
+                    settings.setProperty("writeQueue", value(args, ++i, arg));
+                    break;
+                case "--input-dir":
+                    settings.setProperty("inputDir", value(args, ++i, arg));
+                    break;
+                case "--large-file-mb":
+                    settings.setProperty("largeFileMB", value(args, ++i, arg));
+                    break;
+                case "--match-window":
+                    settings.setProperty("matchWindow", value(args, ++i, arg));
+                    break;
+                case "--start-term":
+                    settings.setProperty("startTerm", value(args, ++i, arg));
+                    break;
+                case "--duplicates":
+                    settings.setProperty("duplicates", value(args, ++i, arg));
+                    break;
+                case "--output-archive":
+                    settings.setProperty("outputArchive", value(args, ++i, arg));
+                    break;
+                case "--archive-level":
+                    settings.setProperty("archiveLevel", value(args, ++i, arg));
+                    break;
+                case "--archive-pages":
+                    settings.setProperty("archivePages", value(args, ++i, arg));
+                    break;
+                case "--blank-pages":
+                    settings.setProperty("blankPages", value(args, ++i, arg));
+                    break;
+                case "--separator-term":
+                    settings.setProperty("separatorTerm", value(args, ++i, arg));
+                    break;
+                case "--blank-render-dpi":
+                    settings.setProperty("blankRenderDpi", value(args, ++i, arg));
+                    break;
+                case "--blank-max-ink":
+                    settings.setProperty("blankMaxInk", value(args, ++i, arg));
+                    break;
+                case "--ocr-command":
+                    settings.setProperty("ocrCommand", value(args, ++i, arg));
+                    break;
+                case "--ocr-language":
+                    settings.setProperty("ocrLanguage", value(args, ++i, arg));
+                    break;
+                case "--ocr-dpi":
+                    settings.setProperty("ocrDpi", value(args, ++i, arg));
+                    break;
+                case "--ocr-region":
+                    settings.setProperty("ocrRegion", value(args, ++i, arg));
+                    break;
+                case "--ocr-threads":
+                    settings.setProperty("ocrThreads", value(args, ++i, arg));
+                    break;
+                case "--ocr-in-flight":
+                    settings.setProperty("ocrInFlight", value(args, ++i, arg));
+                    break;
+                case "--match-budget-ms":
+                    settings.setProperty("matchBudgetMillis", value(args, ++i, arg));
+                    break;
+                case "--lazy":
+                case "--ocr":
+                case "--group":
+                case "--compact":
+                case "--mmap":
+                case "--restart":
+                case "--jmx":
+                case "--progress":
+                    settings.setProperty(arg.substring(2), "true");
+                    break;
+                case "--skip-unchanged":
+                    settings.setProperty("skipUnchanged", "true");
+                    break;
+                case "--pre-scan":
+                    settings.setProperty("preScan", "true");
+                    break;
+                case "--term":
+                    if (terms == 0) {
+                        settings.stringPropertyNames().stream().filter(k -> k.startsWith("term.")).forEach(settings::remove); // terms on the command line replace those in the config file
+                    }
+                    terms++;
+                    settings.setProperty("term." + terms + ".label", value(args, ++i, arg));
+                    settings.setProperty("term." + terms + ".regex", value(args, ++i, arg));
+                    settings.setProperty("term." + terms + ".group", value(args, ++i, arg));
+                    break;
+                case "--region":
+                    if (terms == 0) {
+                        throw new IllegalArgumentException("--region must follow a --term");
+                    }
+                    settings.setProperty("term." + terms + ".region", value(args, ++i, arg));
+                    break;
+                case "--help":
+                    throw new IllegalArgumentException("PDFBatchSplitter command-line mode");
+                default:
+                    throw new IllegalArgumentException("Unrecognised argument: " + arg);
+            }
+        }
+    }
+
+    /**
+     * Builds the List of SearchTerms from the term.N.* settings, numbered from
+     * 1 without gaps, falling back to the defaults if there are none
+     *
+     * @param settings populated settings
+     * @return List of SearchTerms; the first is the primary identifier
+     */
+    static List<SearchTerm> getSearchTerms(Properties settings) {
+        List<SearchTerm> terms = new ArrayList<>();
+        for (int n = 1; settings.getProperty("term." + n + ".regex") != null; n++) {
+            terms.add(new SearchTerm(settings.getProperty("term." + n + ".label", "term" + n),
+                    settings.getProperty("term." + n + ".regex"),
+                    getInt(settings, "term." + n + ".group", 1),
+                    SearchTerm.parseRegion(settings.getProperty("term." + n + ".region"))));
+        }
+        if (terms.isEmpty()) {
+            terms = SearchTerm.getDefaults();
+        }
+        return terms;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[i];
+    }
+
+    private static String required(Properties settings, String key) {
+        String v = settings.getProperty(key);
+        if (v == null || v.trim().isEmpty()) {
+            throw new IllegalArgumentException("The " + key + " setting is required");
+        }
+        return v.trim();
+    }
+
+    private static int getInt(Properties settings, String key, int defaultValue) {
+        String v = settings.getProperty(key);
+        if (v == null || v.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("The " + key + " setting must be a whole number: " + v);
+        }
+    }
+
+    private static double getDouble(Properties settings, String key, double defaultValue) {
+        String v = settings.getProperty(key);
+        if (v == null || v.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("The " + key + " setting must be a number: " + v);
+        }
+    }
+}
@@ -17,6 +17,9 @@
 package com.reid.pdfbatchsplitter.domain;
 
 import com.reid.pdfbatchsplitter.PDFBatchSplitter;
+import java.awt.geom.Rectangle2D;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 /**
@@ -32,7 +35,12 @@ public class ComponentPage {
     private PDDocument pdfPage;
     private int pageNumber; // page number in original document, starts at 0
     private String pageContents;
+    private Map<Rectangle2D, String> regionContents; // text of just the regions of the page needed by the SearchTerms
     private boolean interpreted; // set to true after the page has been interpreted and identifiers extracted
+    private boolean overBudget; // set to true if matching was abandoned for going over the regex time budget
+    private boolean documentStart; // set to true if the page matched the term marking the start of a document
+    private boolean blank; // set to true if the page couldn't be read because there is nothing on it
+    private boolean separator; // set to true if the page matched the term marking a separator sheet
 
     public ComponentPage(PDDocument p, String c, int n) {
         this.pdfPage = p;
@@ -69,6 +77,10 @@ public class ComponentPage {
         return pdfPage;
     }
 
+    public void setPdfPage(PDDocument pdfPage) {
+        this.pdfPage = pdfPage;
+    }
+
     public String getPageContents() {
         return pageContents;
     }
@@ -77,6 +89,50 @@ public class ComponentPage {
         this.pageContents = pageContents;
     }
 
+    /**
+     * Gets the text extracted from one region of the page
+     *
+     * @param region rectangle the text was extracted from
+     * @return the region's text, or null if it was not extracted
+     */
+    public String getRegionContents(Rectangle2D region) {
+        return regionContents == null ? null : regionContents.get(region);
+    }
+
+    public void setRegionContents(Rectangle2D region, String contents) {
+        if (this.regionContents == null) {
+            this.regionContents = new HashMap<>();
+        }
+        this.regionContents.put(region, contents);
+    }
+
+    /**
+     * @return true if any text was extracted from the page or its regions; a
+     * scanned page with no text layer has none
+     */
+    public boolean hasText() {
+        if (pageContents != null && !pageContents.trim().isEmpty()) {
+            return true;
+        }
+        if (regionContents != null) {
+            for (String contents : regionContents.values()) {
+                if (contents != null && !contents.trim().isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Discards the text extracted from the page once it has been interpreted,
+     * so that only the identifiers are kept
+     */
+    public void releaseContents() {
+        this.pageContents = null;
+        this.regionContents = null;
+    }
+
     public boolean isInterpreted() {
         return interpreted;
     }
@@ -85,6 +141,38 @@ public class ComponentPage {
         this.interpreted = interpreted;
     }
 
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    public void setOverBudget(boolean overBudget) {
+        this.overBudget = overBudget;
+    }
+
+    public boolean isDocumentStart() {
+        return documentStart;
+    }
+
+    public void setDocumentStart(boolean documentStart) {
+        this.documentStart = documentStart;
+    }
+
+    public boolean isBlank() {
+        return blank;
+    }
+
+    public void setBlank(boolean blank) {
+        this.blank = blank;
+    }
+
+    public boolean isSeparator() {
+        return separator;
+    }
+
+    public void setSeparator(boolean separator) {
+        this.separator = separator;
+    }
+
     public int getPageNumber() {
         return pageNumber;
     }
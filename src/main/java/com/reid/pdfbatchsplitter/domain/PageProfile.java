@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.domain;
+
+/**
+ *
+ * @author pmreid
+ *
+ * A domain class to hold what a pre-scan of a page's content stream found on
+ * it, before any text is extracted
+ */
+public class PageProfile {
+
+    /**
+     * What a page holds, as far as splitting it is concerned
+     */
+    public enum Kind {
+        /**
+         * text, and nothing else that needs reading
+         */
+        TEXT,
+        /**
+         * marks but no text layer, eg a scan, so its text can only be read
+         * with OCR
+         */
+        IMAGE_ONLY,
+        /**
+         * both text and images
+         */
+        MIXED,
+        /**
+         * nothing painted on it at all
+         */
+        BLANK
+    }
+
+    private final Kind kind;
+    private final int textLength; // characters shown by the content stream, estimated from the bytes of its strings
+    private final int imageCount; // images drawn, including inline images and those inside forms
+    private final long contentLength; // bytes of the page's content streams, as stored
+    private final double area; // area of the page's media box, in square points
+
+    public PageProfile(Kind k, int text, int images, long content, double a) {
+        this.kind = k;
+        this.textLength = text;
+        this.imageCount = images;
+        this.contentLength = content;
+        this.area = a;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getTextLength() {
+        return textLength;
+    }
+
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return true if the page has a text layer worth extracting
+     */
+    public boolean hasText() {
+        return kind == Kind.TEXT || kind == Kind.MIXED;
+    }
+
+    /**
+     * @return estimated characters of text per square inch of the page
+     */
+    public double getTextDensity() {
+        return area > 0 ? textLength / (area / (72.0 * 72.0)) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " (" + textLength + " characters, " + imageCount + " images)";
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.domain;
+
+/**
+ *
+ * @author pmreid
+ *
+ * A domain class to hold a snapshot of the progress of splitting one source
+ * PDF, as published to a ProgressListener
+ */
+public class SplitProgress {
+
+    private final int totalPages;
+    private final int pagesExtracted;
+    private final int pagesInterpreted;
+    private final int pagesWritten;
+    private final long elapsedNanos;
+    private final double pagesPerSecond; // recent rate of work, in pages interpreted and written, rather than the average over the whole run
+    private final boolean finished;
+
+    public SplitProgress(int total, int extracted, int interpreted, int written, long elapsed, double rate, boolean f) {
+        this.totalPages = total;
+        this.pagesExtracted = extracted;
+        this.pagesInterpreted = interpreted;
+        this.pagesWritten = written;
+        this.elapsedNanos = elapsed;
+        this.pagesPerSecond = rate;
+        this.finished = f;
+    }
+
+    public int getTotalPages() {
+        return totalPages;
+    }
+
+    public int getPagesExtracted() {
+        return pagesExtracted;
+    }
+
+    public int getPagesInterpreted() {
+        return pagesInterpreted;
+    }
+
+    public int getPagesWritten() {
+        return pagesWritten;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getPagesPerSecond() {
+        return pagesPerSecond;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return fraction of the work done, from 0 to 1; extracting and
+     * interpreting a page counts for as much as writing it
+     */
+    public double getFractionDone() {
+        if (finished) {
+            return 1;
+        }
+        return totalPages > 0 ? (pagesInterpreted + pagesWritten) / (2.0 * totalPages) : 0;
+    }
+
+    /**
+     * @return estimated milliseconds until the run finishes, or -1 if it is
+     * too early to tell
+     */
+    public long getRemainingMillis() {
+        double done = getFractionDone();
+        if (done <= 0) {
+            return -1;
+        }
+        return (long) (elapsedNanos / 1e6 * (1 - done) / done);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(String.format("%d of %d pages written (%d interpreted), %.1f pages/s",
+                pagesWritten, totalPages, pagesInterpreted, pagesPerSecond));
+        long remaining = getRemainingMillis();
+        if (!finished && remaining >= 0) {
+            long seconds = (remaining + 999) / 1000;
+            s.append(seconds >= 60 ? String.format(", about %dm %02ds left", seconds / 60, seconds % 60) : String.format(", about %ds left", seconds));
+        }
+        return s.toString();
+    }
+}
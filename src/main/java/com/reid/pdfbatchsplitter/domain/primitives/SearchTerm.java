@@ -16,6 +16,9 @@
  */
 package com.reid.pdfbatchsplitter.domain.primitives;
 
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -29,6 +32,8 @@ public class SearchTerm {
     private String label;
     private String regex;
     private int outputGroup;
+    private volatile Pattern pattern; // compiled from regex on first use, cleared whenever regex changes
+    private Rectangle2D region; // part of the page to search, in points from the top-left corner; null for the whole page
 
     public SearchTerm(String p, String r, int o) {
         this.label = p;
@@ -36,6 +41,29 @@ public class SearchTerm {
         this.outputGroup = o;
     }
 
+    public SearchTerm(String p, String r, int o, Rectangle2D g) {
+        this(p, r, o);
+        this.region = g;
+    }
+
+    /**
+     * Creates the List of SearchTerms used when none have been configured,
+     * populated with sample uses
+     *
+     * @return new List of default SearchTerms
+     */
+    public static List<SearchTerm> getDefaults() {
+        List<SearchTerm> search = new ArrayList<>();
+        search.add(new SearchTerm("Admission Number", "([0-9]{5,6}).*(Admission Number)", 1));
+        search.add(new SearchTerm("Candidate Number", "([0-9]{4})(Candidate Number)", 1));
+        search.add(new SearchTerm("Candidate Number", "([0-9]{4})\\s[\\s\\S]*[0-9]{10}[a-zA-Z][\\s\\S]*(Candidate Number)", 1));
+        search.add(new SearchTerm("UPN", "(UPN:?)[\\s\\S]:?([a-zA-Z0-9]+)", 2));
+        //search.add(new SearchTerm("ULN", "(ULN:?)[\\s\\S]:?([0-9]+)", 2));
+        //search.add(new SearchTerm("ULN", "([0-9]{10})(ULN)", 1));
+        search.add(new SearchTerm("Name", "([a-zA-Z]+\\-?[a-zA-Z]+,\\s[a-zA-Z]+\\-?[a-zA-Z]+?)(Name)", 1));
+        return search;
+    }
+
     public String getLabel() {
         return label;
     }
@@ -50,6 +78,23 @@ public class SearchTerm {
 
     public void setRegex(String regex) {
         this.regex = regex;
+        this.pattern = null;
+    }
+
+    /**
+     * Gets the compiled form of the regular expression, compiling it with
+     * DOTALL on first use and caching it until the regex is changed. Pattern
+     * objects are thread safe, so the result can be shared between workers.
+     *
+     * @return compiled Pattern for this search term
+     */
+    public Pattern getPattern() {
+        Pattern p = this.pattern;
+        if (p == null) {
+            p = Pattern.compile(this.regex, Pattern.DOTALL);
+            this.pattern = p;
+        }
+        return p;
     }
 
     public int getOutputGroup() {
@@ -60,4 +105,55 @@ public class SearchTerm {
         this.outputGroup = outputGroup;
     }
 
+    public Rectangle2D getRegion() {
+        return region;
+    }
+
+    /**
+     * Restricts this search term to a rectangle of the page, so only the text
+     * inside it is extracted and searched
+     *
+     * @param region rectangle in points, measured from the top-left corner of
+     * the page, or null to search the whole page
+     */
+    public void setRegion(Rectangle2D region) {
+        this.region = region;
+    }
+
+    /**
+     * Parses a region entered as "x,y,width,height" in points
+     *
+     * @param r textual region; null or blank for the whole page
+     * @return parsed region, or null for the whole page
+     * @throws NumberFormatException if the region is not four numbers
+     */
+    public static Rectangle2D parseRegion(String r) {
+        if (r == null || r.trim().isEmpty()) {
+            return null;
+        }
+        String[] parts = r.split(",");
+        if (parts.length != 4) {
+            throw new NumberFormatException("A region must be given as x,y,width,height: " + r);
+        }
+        return new Rectangle2D.Double(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+    }
+
+    /**
+     * Formats a region in the form read by parseRegion
+     *
+     * @param r region, or null for the whole page
+     * @return "x,y,width,height", or an empty String for the whole page
+     */
+    public static String formatRegion(Rectangle2D r) {
+        if (r == null) {
+            return "";
+        }
+        return formatNumber(r.getX()) + "," + formatNumber(r.getY()) + "," + formatNumber(r.getWidth()) + "," + formatNumber(r.getHeight());
+    }
+
+    private static String formatNumber(double d) {
+        return d == Math.rint(d) ? String.valueOf((long) d) : String.valueOf(d);
+    }
+
 }
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton over the literal "anchors" of a set of regular
+ * expressions, eg "Candidate Number" or "UPN", which finds every occurrence
+ * of every anchor in a single pass over the page text. A regex whose anchor
+ * does not occur on a page cannot match it, so it need not be run at all.
+ *
+ * Not thread safe: the hit positions of the last scan are held internally, so
+ * each worker needs its own instance.
+ *
+ * @author pmreid
+ */
+public class AnchorPrefilter {
+
+    private static final int MIN_ANCHOR_LENGTH = 3; // shorter literals are too common to be worth filtering on
+    private static final String CLASS_ESCAPES = "dDsSwWbBhHvVRAzZGtnrfae"; // escapes which take up no more of the regex than their letter
+
+    private final String[] anchors;
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<Integer> failure = new ArrayList<>();
+    private final List<int[]> outputs = new ArrayList<>(); // anchor indices which end at each state
+    private final int[][] hits; // start positions of each anchor found by the last scan
+    private final int[] hitCounts;
+
+    public AnchorPrefilter(List<String> a) {
+        this.anchors = a.toArray(new String[0]);
+        this.hits = new int[anchors.length][8];
+        this.hitCounts = new int[anchors.length];
+        build();
+    }
+
+    /**
+     * Builds the trie of anchors, then the failure links breadth-first
+     */
+    private void build() {
+        addState();
+        for (int i = 0; i < anchors.length; i++) {
+            int state = 0;
+            for (char c : anchors[i].toCharArray()) {
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = addState();
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.set(state, append(outputs.get(state), i));
+        }
+        LinkedList<Integer> queue = new LinkedList<>();
+        for (int child : transitions.get(0).values()) {
+            queue.add(child); // children of the root fail back to the root
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.removeFirst();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int f = failure.get(state);
+                while (f != 0 && !transitions.get(f).containsKey(edge.getKey())) {
+                    f = failure.get(f);
+                }
+                Integer target = transitions.get(f).get(edge.getKey());
+                f = (target == null || target == child) ? 0 : target;
+                failure.set(child, f);
+                for (int o : outputs.get(f)) {
+                    outputs.set(child, append(outputs.get(child), o));
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private int addState() {
+        transitions.add(new HashMap<Character, Integer>());
+        failure.add(0);
+        outputs.add(new int[0]);
+        return transitions.size() - 1;
+    }
+
+    private static int[] append(int[] a, int v) {
+        int[] b = Arrays.copyOf(a, a.length + 1);
+        b[a.length] = v;
+        return b;
+    }
+
+    /**
+     * Finds every occurrence of every anchor in the supplied text, replacing
+     * the results of any previous scan
+     *
+     * @param text page text to scan
+     */
+    public void scan(CharSequence text) {
+        Arrays.fill(hitCounts, 0);
+        int state = 0;
+        for (int pos = 0; pos < text.length(); pos++) {
+            char c = text.charAt(pos);
+            Integer next;
+            while ((next = transitions.get(state).get(c)) == null && state != 0) {
+                state = failure.get(state);
+            }
+            state = next == null ? 0 : next;
+            for (int a : outputs.get(state)) {
+                if (hitCounts[a] == hits[a].length) {
+                    hits[a] = Arrays.copyOf(hits[a], hits[a].length * 2);
+                }
+                hits[a][hitCounts[a]++] = pos - anchors[a].length() + 1;
+            }
+        }
+    }
+
+    /**
+     * @param anchor index of the anchor
+     * @return number of times the anchor was found by the last scan
+     */
+    public int getHitCount(int anchor) {
+        return hitCounts[anchor];
+    }
+
+    /**
+     * @param anchor index of the anchor
+     * @param n which occurrence, in order through the text
+     * @return start position of the nth occurrence of the anchor
+     */
+    public int getHitStart(int anchor, int n) {
+        return hits[anchor][n];
+    }
+
+    public int getAnchorLength(int anchor) {
+        return anchors[anchor].length();
+    }
+
+    /**
+     * Finds the longest run of literal text which every match of a regular
+     * expression must contain. The analysis is deliberately conservative:
+     * expressions using alternation, inline flags or constructs it does not
+     * understand have no anchor, and so are always run in full; escapes with
+     * arguments of their own, eg \x41 or \cM, end the analysis, keeping
+     * only the literals found before them.
+     *
+     * @param regex regular expression, as entered in a SearchTerm
+     * @return required literal, or null if there isn't a usable one
+     */
+    public static String requiredLiteral(String regex) {
+        if (regex == null || regex.contains("|") || regex.contains("(?") || regex.contains("\\Q")) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>();
+        LinkedList<Integer> groupStarts = new LinkedList<>(); // size of literals when each open group began
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            if (c == '\\' && i + 1 < regex.length()) {
+                char e = regex.charAt(++i);
+                if (e == 'p' || e == 'P') {
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == '{') {
+                        i = regex.indexOf('}', i); // skip a \p{Class}
+                        if (i < 0) {
+                            return null;
+                        }
+                    } else {
+                        i++; // skip a \pL
+                    }
+                } else if (Character.isLetterOrDigit(e) && CLASS_ESCAPES.indexOf(e) < 0) {
+                    // eg \x41, \0101, \cM, \k<name>, a Unicode escape or a back reference:
+                    // rather than parse its arguments, stop, keeping only the literals which
+                    // are certainly outside any group
+                    flush(run, literals);
+                    literals.subList(groupStarts.isEmpty() ? literals.size() : groupStarts.getLast(), literals.size()).clear();
+                    break;
+                } else if (!Character.isLetterOrDigit(e)) {
+                    literal = true; // an escaped symbol stands for itself
+                    c = e;
+                }
+            } else if (c == '[') {
+                i = endOfCharacterClass(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (c == '(') {
+                flush(run, literals);
+                groupStarts.push(literals.size());
+            } else if (c == ')') {
+                flush(run, literals);
+                if (groupStarts.isEmpty()) {
+                    return null;
+                }
+                int start = groupStarts.pop();
+                if (isOptionalQuantifier(regex, i + 1)) {
+                    literals.subList(start, literals.size()).clear(); // the whole group may be absent
+                }
+            } else if (c == '{') {
+                i = regex.indexOf('}', i); // a counted repeat of whatever came before
+                if (i < 0) {
+                    return null;
+                }
+            } else if (".^$?*+".indexOf(c) < 0) {
+                literal = true; // anything else is an ordinary character
+            }
+
+            if (literal) {
+                if (isOptionalQuantifier(regex, i + 1)) {
+                    flush(run, literals); // this character may be absent, so doesn't join the run
+                } else {
+                    run.append(c);
+                    if (i + 1 < regex.length() && (regex.charAt(i + 1) == '+' || regex.charAt(i + 1) == '{')) {
+                        flush(run, literals); // repeated characters end the run
+                    }
+                }
+            } else {
+                flush(run, literals);
+            }
+            i++;
+        }
+        flush(run, literals);
+        String longest = null;
+        for (String l : literals) {
+            if (l.length() >= MIN_ANCHOR_LENGTH && (longest == null || l.length() > longest.length())) {
+                longest = l;
+            }
+        }
+        return longest;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    private static boolean isOptionalQuantifier(String regex, int i) {
+        if (i >= regex.length()) {
+            return false;
+        }
+        char q = regex.charAt(i);
+        return q == '?' || q == '*' || (q == '{' && regex.startsWith("{0", i));
+    }
+
+    private static int endOfCharacterClass(String regex, int i) {
+        int depth = 0;
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
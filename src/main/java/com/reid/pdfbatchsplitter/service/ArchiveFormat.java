@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+/**
+ * Kind of archive an ArchiveOutputSink streams the output files into
+ *
+ * @author pmreid
+ */
+public enum ArchiveFormat {
+
+    /**
+     * ZIP, with each file deflated at the compression level, or stored as it
+     * is at level 0
+     */
+    ZIP(".zip"),
+    /**
+     * Uncompressed POSIX tar; the compression level is ignored
+     */
+    TAR(".tar"),
+    /**
+     * POSIX tar, gzipped as a whole at the compression level
+     */
+    TAR_GZ(".tar.gz");
+
+    private final String extension;
+
+    ArchiveFormat(String e) {
+        this.extension = e;
+    }
+
+    /**
+     * @return filename extension of the archive, including the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.PDFBatchSplitter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams every output file into a single ZIP or tar archive in the
+ * destination directory, rather than creating a file per page, which is slow
+ * on file systems and shares where the cost is in the metadata of each file.
+ * Nothing is written to temporary files: each PDF is compressed straight into
+ * the archive as it arrives. Optionally a new archive is started once one
+ * holds a set number of pages, so that downstream systems get one object per
+ * batch; a file of several pages is never split between archives.
+ *
+ * Writes are serialised, so an AsyncOutputSink in front of this one moves the
+ * compression off the threads splitting the pages, but not onto several
+ * threads at once.
+ *
+ * Merged duplicates, which are written again as each page is added, can't be
+ * written to an archive, as it would hold every copy; PDFSplitter refuses the
+ * combination.
+ *
+ * A run which fails or is cancelled calls abort() rather than close(), so
+ * the archive it was writing is left without its end (the tar end blocks,
+ * ZIP directory or gzip trailer) and renamed with a ".partial" extension,
+ * rather than looking like a complete archive with pages missing.
+ *
+ * @author pmreid
+ */
+public class ArchiveOutputSink implements OutputSink {
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final int TAR_BLOCK = 512;
+    private static final int TAR_NAME_LENGTH = 100;
+    public static final String PARTIAL_EXTENSION = ".partial";
+    private final File destination;
+    private final String baseName;
+    private final ArchiveFormat format;
+    private final int level; // compression level from 0 to 9, or -1 for the default
+    private final int pagesPerArchive; // pages after which a new archive is started; 0 for a single archive
+    private final List<File> archives = new ArrayList<>();
+    private OutputStream out; // the current archive, which is a ZipOutputStream for ZIP
+    private CutOffStream file; // the current archive's file, under any compression
+    private boolean aborted;
+    private int pagesInArchive;
+
+    /**
+     * Creates the first archive
+     *
+     * @param d destination directory
+     * @param name name of the archive, without its extension; numbered if
+     * there may be more than one
+     * @param f format of the archive
+     * @param l compression level, from 0 (none) to 9, or -1 for the default
+     * @param n pages after which to start a new archive, or 0 for a single
+     * archive
+     * @throws IOException if the archive can't be created
+     */
+    public ArchiveOutputSink(File d, String name, ArchiveFormat f, int l, int n) throws IOException {
+        if (l < -1 || l > 9) {
+            throw new IllegalArgumentException("The compression level must be from 0 to 9, or -1 for the default: " + l);
+        }
+        this.destination = d;
+        this.baseName = name;
+        this.format = f;
+        this.level = l;
+        this.pagesPerArchive = Math.max(0, n);
+        openArchive();
+    }
+
+    @Override
+    public void write(int pageNumber, String filename, byte[] pdf) throws IOException {
+        write(pageNumber, pageNumber, filename, pdf);
+    }
+
+    @Override
+    public synchronized void write(int firstPage, int lastPage, String filename, byte[] pdf) throws IOException {
+        if (aborted) {
+            return; // pages still queued when the run stopped
+        }
+        try {
+            if (pagesPerArchive > 0 && pagesInArchive >= pagesPerArchive) {
+                finishArchive();
+                openArchive();
+            }
+            if (format == ArchiveFormat.ZIP) {
+                writeZipEntry(filename, pdf);
+            } else {
+                writeTarEntry(filename, pdf);
+            }
+        } catch (IOException | RuntimeException ex) {
+            try {
+                abort(); // the archive is missing this file, so mustn't be finished as though it were complete
+            } catch (IOException abortFailure) {
+                ex.addSuppressed(abortFailure);
+            }
+            throw ex;
+        }
+        pagesInArchive += lastPage - firstPage + 1;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            finishArchive();
+        }
+    }
+
+    /**
+     * Stops the current archive without writing its end, and renames it with
+     * the ".partial" extension; any later writes are discarded. Archives
+     * already finished are left as they are.
+     *
+     * @throws IOException if the archive can't be closed or renamed
+     */
+    public synchronized void abort() throws IOException {
+        aborted = true;
+        if (out == null) {
+            return; // already finished
+        }
+        File current = archives.get(archives.size() - 1);
+        try {
+            file.cutOff();
+            out.close(); // frees the compressor; its trailer goes nowhere
+        } finally {
+            out = null;
+            File partial = new File(current.getPath() + PARTIAL_EXTENSION);
+            Files.move(current.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            archives.set(archives.size() - 1, partial);
+        }
+    }
+
+    /**
+     * @return archives written so far, in order; after abort(), the last is
+     * the ".partial" one
+     */
+    public synchronized List<File> getArchives() {
+        return new ArrayList<>(archives);
+    }
+
+    private void openArchive() throws IOException {
+        String name = pagesPerArchive > 0 ? String.format("%s%s%03d", baseName, PDFBatchSplitter.DEFAULT_SEPARATOR, archives.size() + 1) : baseName;
+        File archive = new File(destination, name + format.getExtension());
+        file = new CutOffStream(new BufferedOutputStream(new FileOutputStream(archive), BUFFER_SIZE));
+        switch (format) {
+            case ZIP:
+                ZipOutputStream zip = new ZipOutputStream(file);
+                zip.setLevel(level == 0 ? Deflater.NO_COMPRESSION : level);
+                out = zip;
+                break;
+            case TAR_GZ:
+                out = new GZIPOutputStream(file, BUFFER_SIZE) {
+                    {
+                        def.setLevel(level); // GZIPOutputStream has no other way to set it
+                    }
+                };
+                break;
+            default:
+                out = file;
+        }
+        archives.add(archive);
+        pagesInArchive = 0;
+    }
+
+    /**
+     * Writes the end of the current archive and closes it
+     */
+    private void finishArchive() throws IOException {
+        try {
+            if (format != ArchiveFormat.ZIP) {
+                out.write(new byte[2 * TAR_BLOCK]); // two empty blocks mark the end of a tar archive
+            }
+        } finally {
+            out.close(); // also finishes the ZIP directory or gzip trailer
+            out = null;
+        }
+    }
+
+    private void writeZipEntry(String filename, byte[] pdf) throws IOException {
+        ZipEntry entry = new ZipEntry(filename);
+        if (level == 0) { // stored as it is, which needs the size and checksum up front
+            CRC32 crc = new CRC32();
+            crc.update(pdf);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(pdf.length);
+            entry.setCompressedSize(pdf.length);
+            entry.setCrc(crc.getValue());
+        }
+        ZipOutputStream zip = (ZipOutputStream) out;
+        zip.putNextEntry(entry);
+        zip.write(pdf);
+        zip.closeEntry();
+    }
+
+    /**
+     * Writes a file to a POSIX (ustar) tar archive, preceded by a pax header
+     * holding its full name if it is too long for the ustar header
+     */
+    private void writeTarEntry(String filename, byte[] pdf) throws IOException {
+        long now = System.currentTimeMillis() / 1000;
+        byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+        if (name.length > TAR_NAME_LENGTH) {
+            byte[] record = getPaxRecord("path", filename);
+            out.write(getTarHeader(truncate(("PaxHeaders/" + filename).getBytes(StandardCharsets.UTF_8)), record.length, now, 'x'));
+            writeTarData(record);
+            name = truncate(name);
+        }
+        out.write(getTarHeader(name, pdf.length, now, '0'));
+        writeTarData(pdf);
+    }
+
+    /**
+     * Cuts a UTF-8 name down to fit the ustar name field, at the start of a
+     * character, so that readers which ignore the pax header still see a
+     * valid name
+     */
+    private static byte[] truncate(byte[] name) {
+        int length = TAR_NAME_LENGTH;
+        while (length > 0 && (name[length] & 0xc0) == 0x80) {
+            length--; // name[length] continues a character which would be cut in two
+        }
+        return Arrays.copyOf(name, length);
+    }
+
+    private void writeTarData(byte[] data) throws IOException {
+        out.write(data);
+        int padding = (TAR_BLOCK - data.length % TAR_BLOCK) % TAR_BLOCK;
+        out.write(new byte[padding]);
+    }
+
+    /**
+     * @return a pax extended header record, "length key=value\n", where the
+     * length counts its own digits
+     */
+    private static byte[] getPaxRecord(String key, String value) {
+        int length = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int digits = String.valueOf(length).length();
+        while (String.valueOf(length + digits).length() != digits) {
+            digits++;
+        }
+        return ((length + digits) + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] getTarHeader(byte[] name, long size, long mtime, char type) {
+        byte[] header = new byte[TAR_BLOCK];
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, TAR_NAME_LENGTH));
+        putOctal(header, 100, 8, 0644); // mode
+        putOctal(header, 108, 8, 0); // uid
+        putOctal(header, 116, 8, 0); // gid
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, mtime);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8); // magic and version
+        Arrays.fill(header, 148, 156, (byte) ' '); // the checksum is worked out with its own field as spaces
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Writes a number into a header field as zero-padded octal, followed by a
+     * NUL
+     */
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        while (octal.length() < length - 1) {
+            octal = "0" + octal;
+        }
+        System.arraycopy(octal.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * Passes writes on to a file until cut off, after which the file is
+     * closed and anything else written is thrown away
+     */
+    private static class CutOffStream extends FilterOutputStream {
+
+        private boolean cutOff;
+
+        CutOffStream(OutputStream o) {
+            super(o);
+        }
+
+        void cutOff() throws IOException {
+            if (!cutOff) {
+                cutOff = true;
+                out.close();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!cutOff) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!cutOff) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!cutOff) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!cutOff) {
+                cutOff = true;
+                out.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the writes of another OutputSink on a set of writer threads, so that
+ * slow disks (eg network shares) do not hold up extraction. Each writer has a
+ * bounded queue: once it is full, write() blocks until there is room, so
+ * extraction can never run far enough ahead to fill the heap.
+ *
+ * Writes to the same filename always go to the same writer, so if a filename
+ * is written more than once the last write still wins, as it does when
+ * writing synchronously.
+ *
+ * @author pmreid
+ */
+public class AsyncOutputSink implements OutputSink {
+
+    private static final PendingWrite END = new PendingWrite(-1, -1, null, null); // tells a writer to finish
+    private static final long POLL_MILLIS = 100; // how often a blocked write() checks whether a writer has failed
+
+    private final OutputSink delegate;
+    private final List<BlockingQueue<PendingWrite>> queues;
+    private final Thread[] writers;
+    private volatile Throwable failure; // the first write to fail, if any
+
+    /**
+     * @param d sink which does the actual writing; must allow concurrent
+     * writes
+     * @param writerThreads number of writer threads
+     * @param capacity maximum number of pages waiting to be written, across
+     * all writers
+     */
+    public AsyncOutputSink(OutputSink d, int writerThreads, int capacity) {
+        this.delegate = d;
+        int threads = Math.max(1, writerThreads);
+        this.queues = new ArrayList<>(threads);
+        this.writers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final BlockingQueue<PendingWrite> queue = new ArrayBlockingQueue<>(Math.max(1, capacity / threads));
+            queues.add(queue);
+            writers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain(queue);
+                }
+            }, "PDFBatchSplitter-writer-" + i);
+            writers[i].setDaemon(true);
+            writers[i].start();
+        }
+    }
+
+    @Override
+    public void write(int pageNumber, String filename, byte[] pdf) throws IOException {
+        write(pageNumber, pageNumber, filename, pdf);
+    }
+
+    @Override
+    public void write(int firstPage, int lastPage, String filename, byte[] pdf) throws IOException {
+        checkFailure();
+        BlockingQueue<PendingWrite> queue = queues.get(Math.floorMod(filename.hashCode(), queues.size()));
+        PendingWrite pending = new PendingWrite(firstPage, lastPage, filename, pdf);
+        try {
+            while (!queue.offer(pending, POLL_MILLIS, TimeUnit.MILLISECONDS)) { // blocks while the writer is behind
+                checkFailure(); // but not once a write has failed, as nothing more will be written
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to write " + filename, ex);
+        }
+    }
+
+    /**
+     * Waits for every queued write to finish, then closes the underlying sink
+     *
+     * @throws IOException if any write failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (BlockingQueue<PendingWrite> queue : queues) {
+                if (failure != null) {
+                    queue.clear(); // the pages would only be discarded, so make room for END
+                }
+                queue.put(END);
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for writes to finish", ex);
+        } finally {
+            delegate.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Body of a writer thread: writes queued pages until told to finish. After
+     * a failure, remaining pages are discarded rather than written, but the
+     * queue is still drained so that producers are not left blocked; any
+     * exception is caught for the same reason, as a writer which died would
+     * never drain its queue again.
+     *
+     * @param queue this writer's queue
+     */
+    private void drain(BlockingQueue<PendingWrite> queue) {
+        while (true) {
+            PendingWrite next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (next == END) {
+                return;
+            }
+            if (failure == null) {
+                try {
+                    delegate.write(next.firstPage, next.lastPage, next.filename, next.pdf);
+                } catch (Throwable ex) {
+                    synchronized (this) {
+                        if (failure == null) {
+                            failure = ex;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Error writing PDF files to disk: " + failure.getLocalizedMessage(), failure);
+        }
+    }
+
+    /**
+     * A page waiting in a writer's queue
+     */
+    private static class PendingWrite {
+
+        private final int firstPage;
+        private final int lastPage;
+        private final String filename;
+        private final byte[] pdf;
+
+        PendingWrite(int first, int last, String f, byte[] p) {
+            this.firstPage = first;
+            this.lastPage = last;
+            this.filename = f;
+            this.pdf = p;
+        }
+    }
+}
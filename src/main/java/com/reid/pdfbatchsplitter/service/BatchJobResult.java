@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.File;
+
+/**
+ * The outcome of splitting one source PDF as part of a larger run by the
+ * BatchJobScheduler, along with the RunMetrics of its split
+ *
+ * @author pmreid
+ */
+public class BatchJobResult {
+
+    private final File source;
+    private int pageCount;
+    private int failureCount; // pages that could not be interpreted
+    private long elapsedNanos;
+    private String error; // null unless the whole source failed
+    private RunMetrics metrics; // null if the source was never split
+
+    public BatchJobResult(File s) {
+        this.source = s;
+    }
+
+    public File getSource() {
+        return source;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public void setPageCount(int pageCount) {
+        this.pageCount = pageCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(int failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    public double getPagesPerSecond() {
+        return elapsedNanos > 0 ? pageCount / (elapsedNanos / 1e9) : 0;
+    }
+
+    @Override
+    public String toString() {
+        if (!isSuccessful()) {
+            return source.getName() + ": FAILED: " + error;
+        }
+        return String.format("%s: %d pages in %.1fs (%.1f pages/s), %d not interpreted",
+                source.getName(), pageCount, elapsedNanos / 1e9, getPagesPerSecond(), failureCount);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Splits many source PDFs in one run, eg every PDF in a directory. Each
+ * source is written to its own sub-directory of the destination, named after
+ * the source file; sources whose names would give the same sub-directory, eg
+ * a.pdf and a.PDF, get a numbered one instead.
+ *
+ * Large sources are split one at a time, each using the whole pool of
+ * workers through the parallel engine. Small sources are then run side by
+ * side on the same pool, each streaming on a single worker, biggest first so
+ * that the pool finishes them about evenly. Either way no more than the
+ * configured number of pages is processed at once.
+ *
+ * @author pmreid
+ */
+public class BatchJobScheduler {
+
+    private final File destination;
+    private final List<SearchTerm> searchTerms;
+    private final String prefix;
+    private final String suffix;
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+    private long largeFileSize = 20L * 1024 * 1024; // sources at least this big get the whole pool to themselves
+    private Consumer<PDFSplitter> configurer; // applies any other settings to each PDFSplitter created
+
+    public BatchJobScheduler(File d, List<SearchTerm> t, String p, String suff) {
+        this.destination = d;
+        this.searchTerms = t;
+        this.prefix = p;
+        this.suffix = suff;
+    }
+
+    /**
+     * Lists the files in a directory whose names match a glob pattern, eg
+     * "*.pdf"
+     *
+     * @param dir directory to search; sub-directories are not searched
+     * @param glob glob pattern for the file names
+     * @return matching files, in name order
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<File> findSources(File dir, String glob) throws IOException {
+        List<File> sources = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir.toPath(), glob)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    sources.add(entry.toFile());
+                }
+            }
+        }
+        Collections.sort(sources);
+        return sources;
+    }
+
+    /**
+     * Splits each of the sources, collecting a result for each. A source that
+     * fails does not stop the others.
+     *
+     * @param sources source PDFs to split
+     * @return one result per source, in the same order as the sources
+     * @throws InterruptedException if interrupted while waiting for jobs
+     */
+    public List<BatchJobResult> run(final List<File> sources) throws InterruptedException {
+        final List<BatchJobResult> results = new ArrayList<>();
+        final String[] targets = targetNames(sources);
+        List<Integer> large = new ArrayList<>();
+        List<Integer> small = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            results.add(new BatchJobResult(sources.get(i)));
+            if (sources.get(i).length() >= largeFileSize) {
+                large.add(i);
+            } else {
+                small.add(i);
+            }
+        }
+
+        for (int i : large) {
+            split(sources.get(i), targets[i], results.get(i), poolSize);
+        }
+
+        // run the small sources biggest first, so that the last to finish are the quickest:
+        Collections.sort(small, Comparator.comparingLong((Integer i) -> sources.get(i).length()).reversed());
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+        try {
+            for (final int i : small) {
+                pool.submit(() -> split(sources.get(i), targets[i], results.get(i), 1));
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return results;
+    }
+
+    /**
+     * Names the sub-directory of the destination for each source: the source's
+     * name without its .pdf extension, or with a number added where that has
+     * already been used, ignoring case as the file system may
+     *
+     * @param sources source PDFs, possibly including the same file twice
+     * @return sub-directory names, in the same order as the sources
+     */
+    static String[] targetNames(List<File> sources) {
+        String[] targets = new String[sources.size()];
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < targets.length; i++) {
+            String base = sources.get(i).getName().replaceFirst("(?i)\\.pdf$", "");
+            String target = base;
+            for (int n = 2; !used.add(target.toLowerCase(Locale.ROOT)); n++) {
+                target = base + "_" + n;
+            }
+            targets[i] = target;
+        }
+        return targets;
+    }
+
+    /**
+     * Splits a single source into its own sub-directory of the destination,
+     * recording the outcome
+     *
+     * @param source source PDF
+     * @param targetName name of the sub-directory to write to
+     * @param result result to populate
+     * @param workers number of workers for the PDFSplitter
+     */
+    private void split(File source, String targetName, BatchJobResult result, int workers) {
+        long start = System.nanoTime();
+        try {
+            File target = new File(destination, targetName);
+            if (!target.isDirectory() && !target.mkdirs()) {
+                throw new IOException("Could not create destination directory " + target.getAbsolutePath());
+            }
+            PDFSplitter splitter = new PDFSplitter(source, target, searchTerms, prefix, suffix, false);
+            if (configurer != null) {
+                configurer.accept(splitter);
+            }
+            splitter.setWorkerCount(workers);
+            try {
+                splitter.process();
+            } finally {
+                result.setMetrics(splitter.getMetrics()); // the run's metrics, complete even if it failed part way
+            }
+            result.setPageCount(splitter.getPageCount());
+            result.setFailureCount(splitter.getFailureCount());
+        } catch (Throwable ex) { // an Error too, eg running out of memory, so that the source isn't taken to have split cleanly
+            result.setError(ex.getLocalizedMessage() == null ? ex.toString() : ex.getLocalizedMessage());
+        }
+        result.setElapsedNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * Summarises a run: one line per source, then the totals
+     *
+     * @param results results of a run
+     * @param elapsedNanos wall-clock time of the whole run
+     * @return multi-line summary
+     */
+    public static String summarise(List<BatchJobResult> results, long elapsedNanos) {
+        StringBuilder summary = new StringBuilder();
+        int pages = 0;
+        int failedSources = 0;
+        for (BatchJobResult result : results) {
+            summary.append(result).append(System.lineSeparator());
+            pages += result.getPageCount();
+            if (!result.isSuccessful()) {
+                failedSources++;
+            }
+        }
+        summary.append(String.format("%d sources (%d failed), %d pages in %.1fs (%.1f pages/s)",
+                results.size(), failedSources, pages, elapsedNanos / 1e9, elapsedNanos > 0 ? pages / (elapsedNanos / 1e9) : 0));
+        return summary.toString();
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    public long getLargeFileSize() {
+        return largeFileSize;
+    }
+
+    /**
+     * @param largeFileSize size in bytes at which a source is split on its
+     * own with the whole pool, rather than packed with others
+     */
+    public void setLargeFileSize(long largeFileSize) {
+        this.largeFileSize = largeFileSize;
+    }
+
+    /**
+     * @param configurer applied to each PDFSplitter before it runs, to pass on
+     * settings such as the match window; the worker count is set by the
+     * scheduler
+     */
+    public void setConfigurer(Consumer<PDFSplitter> configurer) {
+        this.configurer = configurer;
+    }
+}
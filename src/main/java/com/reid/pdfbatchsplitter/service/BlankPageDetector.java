@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.PageProfile;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+/**
+ * Decides whether a page with no text on it is blank, going from the
+ * cheapest evidence to the dearest: a page the pre-scan found nothing painted
+ * on, or whose content stream is too short to draw anything but a few stray
+ * marks, is blank outright. A page that draws images, eg the scan of the back
+ * side of a sheet, can only be told apart by looking at it, so if a render
+ * resolution is set it is rendered in greyscale at that resolution, which
+ * can be very low, and is blank if hardly any of it is inked.
+ *
+ * Thread safe, as long as each thread renders from its own document.
+ *
+ * @author pmreid
+ */
+public class BlankPageDetector {
+
+    private static final int INK_LEVEL = 192; // grey levels darker than this count as ink; scanned paper is rarely this dark
+    private long maxContentLength = 256; // bytes of content stream below which a page with no images is blank
+    private int renderDpi; // resolution to render pages with images at; 0 never renders them
+    private double maxInk = 0.002; // fraction of a rendered page that may be inked, eg by scanner noise, for it to be blank
+
+    /**
+     * Decides whether a page with no text is blank
+     *
+     * @param doc loaded source document
+     * @param pageNum page number in the source document, starting at 0
+     * @param profile the page's profile
+     * @return true if the page is blank
+     * @throws IOException if the page can't be rendered
+     */
+    public boolean isBlank(PDDocument doc, int pageNum, PageProfile profile) throws IOException {
+        if (profile.getKind() == PageProfile.Kind.BLANK) {
+            return true;
+        }
+        if (profile.getImageCount() == 0 && profile.getContentLength() <= maxContentLength) {
+            return true;
+        }
+        if (renderDpi <= 0) {
+            return false;
+        }
+        return getInk(new PDFRenderer(doc).renderImageWithDPI(pageNum, renderDpi, ImageType.GRAY)) <= maxInk;
+    }
+
+    /**
+     * @param image greyscale image
+     * @return fraction of the image's pixels that are inked
+     */
+    private static double getInk(BufferedImage image) {
+        Raster raster = image.getRaster();
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int[] row = new int[width];
+        long inked = 0;
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(0, y, width, 1, 0, row);
+            for (int level : row) {
+                if (level < INK_LEVEL) {
+                    inked++;
+                }
+            }
+        }
+        return width * height == 0 ? 0 : (double) inked / ((long) width * height);
+    }
+
+    public long getMaxContentLength() {
+        return maxContentLength;
+    }
+
+    /**
+     * @param maxContentLength bytes of content stream below which a page
+     * with no text or images is blank, eg a page with only a border or a
+     * crop mark drawn on it; 0 to only count pages with nothing painted
+     */
+    public void setMaxContentLength(long maxContentLength) {
+        this.maxContentLength = maxContentLength;
+    }
+
+    public int getRenderDpi() {
+        return renderDpi;
+    }
+
+    /**
+     * @param renderDpi resolution to render pages with images at to see
+     * whether they are blank, in dots per inch; 20 to 40 is plenty. 0 leaves
+     * them, so that only pages that draw nothing much are blank
+     */
+    public void setRenderDpi(int renderDpi) {
+        this.renderDpi = renderDpi;
+    }
+
+    public double getMaxInk() {
+        return maxInk;
+    }
+
+    /**
+     * @param maxInk fraction of a rendered page, from 0 to 1, that may be
+     * inked for it to still be blank, allowing for scanner noise and dust
+     */
+    public void setMaxInk(double maxInk) {
+        this.maxInk = maxInk;
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+/**
+ * What to do with blank pages, such as the back sides of single-sided sheets
+ * in a duplex scan, and with separator sheets put between documents
+ *
+ * @author pmreid
+ */
+public enum BlankPagePolicy {
+
+    /**
+     * Write them as pages that couldn't be read, as any other page without
+     * an identifier is
+     */
+    KEEP,
+    /**
+     * Leave them out of the output altogether; when pages are grouped, the
+     * document they fall in carries on past them
+     */
+    DROP,
+    /**
+     * Leave them out of the output, and when pages are grouped, end the
+     * document before them so that the next page starts a new one
+     */
+    BOUNDARY
+}
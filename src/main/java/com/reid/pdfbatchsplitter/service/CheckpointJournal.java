@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Records, in the destination directory, each page that has been written and
+ * the file it was written to, so that a run which stops part way through can
+ * carry on from where it left off rather than from page 0.
+ *
+ * The journal sits in front of the sink that actually writes the files, and
+ * only records a page once that write has succeeded. Each line holds the page
+ * number, the length and CRC32 of the file written, and its filename; on
+ * loading, a page only counts as complete if its file is still there with the
+ * same length and checksum. The first line identifies the source and holds a
+ * hash of the settings that decide the filenames, and a journal left by a
+ * different source (or a changed one), or with different settings, is
+ * ignored.
+ *
+ * @author pmreid
+ */
+public class CheckpointJournal implements OutputSink {
+
+    public static final String JOURNAL_FILENAME = ".pdfbatchsplitter-journal";
+    private static final String HEADER = "PDFBatchSplitter journal 2";
+    private final OutputSink delegate;
+    private final File journalFile;
+    private final Map<Integer, String> completed = new HashMap<>(); // page number to filename, for verified pages only
+    private final Map<Integer, Long> completedLength = new HashMap<>();
+    private final Writer out;
+
+    /**
+     * Loads any journal left in the destination by an earlier run over the
+     * same source with the same settings, and opens it to record the pages
+     * written from now on
+     *
+     * @param d sink that writes the files
+     * @param destination destination directory, where the journal is kept
+     * @param source source PDF file
+     * @param settings the settings which decide the filenames, eg the search
+     * terms, prefix and suffix, in any form that changes when they do
+     * @throws IOException if the journal can't be read or created
+     */
+    public CheckpointJournal(OutputSink d, File destination, File source, String settings) throws IOException {
+        this.delegate = d;
+        this.journalFile = new File(destination, JOURNAL_FILENAME);
+        String header = HEADER + "\t" + source.length() + "\t" + source.lastModified() + "\t" + hash(settings) + "\t" + source.getName();
+        boolean resuming = false;
+        if (this.journalFile.isFile()) {
+            try (BufferedReader in = Files.newBufferedReader(this.journalFile.toPath(), StandardCharsets.UTF_8)) {
+                if (header.equals(in.readLine())) {
+                    resuming = true;
+                    load(in, destination);
+                }
+            }
+        }
+        if (resuming) {
+            this.out = Files.newBufferedWriter(this.journalFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } else {
+            this.out = Files.newBufferedWriter(this.journalFile.toPath(), StandardCharsets.UTF_8);
+            this.out.write(header + "\n");
+            this.out.flush();
+        }
+    }
+
+    private static String hash(String settings) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not available", ex);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(settings.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Reads the entries of an existing journal and keeps those whose files are
+     * intact. Where several pages were written to the same filename (ie they
+     * had the same identifiers), the file holds the last of them, so the
+     * earlier pages also count as complete once a later one checks out.
+     *
+     * @param in journal, positioned after the header
+     * @param destination destination directory
+     * @throws IOException
+     */
+    private void load(BufferedReader in, File destination) throws IOException {
+        Map<String, List<String[]>> byFilename = new LinkedHashMap<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] entry = line.split("\t", 4);
+            if (entry.length == 4) { // a partly written last line is ignored
+                byFilename.computeIfAbsent(entry[3], f -> new ArrayList<>()).add(entry);
+            }
+        }
+        for (Map.Entry<String, List<String[]>> file : byFilename.entrySet()) {
+            File written = new File(destination, file.getKey());
+            if (!written.isFile()) {
+                continue;
+            }
+            byte[] contents = null;
+            List<String[]> entries = file.getValue();
+            for (int i = entries.size() - 1; i >= 0; i--) { // the latest entry for the file is the most likely to match
+                String[] entry = entries.get(i);
+                try {
+                    long length = Long.parseLong(entry[1]);
+                    if (length != written.length()) {
+                        continue;
+                    }
+                    if (contents == null) {
+                        contents = Files.readAllBytes(written.toPath());
+                    }
+                    if (checksum(contents) == Long.parseLong(entry[2])) {
+                        for (int j = 0; j <= i; j++) {
+                            int pageNum = Integer.parseInt(entries.get(j)[0]);
+                            this.completed.put(pageNum, file.getKey());
+                            this.completedLength.put(pageNum, j == i ? length : 0);
+                        }
+                        break;
+                    }
+                } catch (NumberFormatException ex) {
+                    // a damaged entry is treated as not written
+                }
+            }
+        }
+    }
+
+    /**
+     * @param pageNum page number in the source document, starting at 0
+     * @return true if an earlier run wrote the page and its file is intact
+     */
+    public boolean isComplete(int pageNum) {
+        return this.completed.containsKey(pageNum);
+    }
+
+    /**
+     * @param pageNum page number of a complete page
+     * @return filename the page was written to by the earlier run
+     */
+    public String getFilename(int pageNum) {
+        return this.completed.get(pageNum);
+    }
+
+    /**
+     * @param pageNum page number of a complete page
+     * @return bytes in the page's file, or 0 if a later page has since been
+     * written over it
+     */
+    public long getLength(int pageNum) {
+        Long length = this.completedLength.get(pageNum);
+        return length == null ? 0 : length;
+    }
+
+    /**
+     * @return number of pages carried over from an earlier run
+     */
+    public int getCompletedCount() {
+        return this.completed.size();
+    }
+
+    @Override
+    public void write(int pageNumber, String filename, byte[] pdf) throws IOException {
+        write(pageNumber, pageNumber, filename, pdf);
+    }
+
+    /**
+     * Writes a file holding several pages, recording an entry for each of
+     * them, so that every page of a grouped document counts as complete
+     */
+    @Override
+    public void write(int firstPage, int lastPage, String filename, byte[] pdf) throws IOException {
+        this.delegate.write(firstPage, lastPage, filename, pdf);
+        String fields = "\t" + pdf.length + "\t" + checksum(pdf) + "\t" + filename + "\n";
+        StringBuilder entries = new StringBuilder();
+        for (int pageNum = firstPage; pageNum <= lastPage; pageNum++) {
+            entries.append(pageNum).append(fields);
+        }
+        synchronized (this.out) { // writes may arrive from several writer threads
+            this.out.write(entries.toString());
+            this.out.flush(); // so the entry survives if the process is killed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.delegate.close();
+        } finally {
+            synchronized (this.out) {
+                this.out.close();
+            }
+        }
+    }
+
+    /**
+     * Removes the journal once a run has finished, so that the next run over
+     * the destination starts afresh
+     *
+     * @throws IOException
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(this.journalFile.toPath());
+    }
+
+    private static long checksum(byte[] contents) {
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length);
+        return crc.getValue();
+    }
+}
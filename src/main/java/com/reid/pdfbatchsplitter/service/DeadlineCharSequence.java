@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+/**
+ * Page text for a regex to run against that gives up once a deadline has
+ * passed. java.util.regex can't be interrupted, but it reads its input
+ * through charAt(), so checking the clock there (every thousand or so
+ * characters read) lets a runaway, backtracking match be abandoned by
+ * throwing Expired out of the Matcher.
+ *
+ * @author pmreid
+ */
+class DeadlineCharSequence implements CharSequence {
+
+    private static final int CHECK_EVERY = 1024; // characters read between checks of the clock; a power of two
+    private final String text;
+    private final long deadline; // System.nanoTime() after which reading fails
+    private int reads;
+
+    /**
+     * Thrown from charAt() once the deadline has passed; no stack trace is
+     * filled in, as it is expected and caught straight away
+     */
+    static class Expired extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Expired() {
+            super("Regex time budget exceeded", null, false, false);
+        }
+    }
+
+    DeadlineCharSequence(String t, long d) {
+        this.text = t;
+        this.deadline = d;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if ((++reads & (CHECK_EVERY - 1)) == 0 && System.nanoTime() - deadline > 0) {
+            throw new Expired();
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.substring(start, end); // only used to read back matched groups, so needn't be guarded
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
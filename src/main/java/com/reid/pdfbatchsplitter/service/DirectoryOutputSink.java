@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes each output file straight into the destination directory, on the
+ * calling thread
+ *
+ * @author pmreid
+ */
+public class DirectoryOutputSink implements OutputSink {
+
+    private final File destination;
+
+    public DirectoryOutputSink(File d) {
+        this.destination = d;
+    }
+
+    @Override
+    public void write(int pageNumber, String filename, byte[] pdf) throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(this.destination.getAbsolutePath() + "/" + filename))) {
+            out.write(pdf);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // nothing is held open between writes
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a PDFSplitter run that stopped because two pages resolved to the
+ * same output filename, when the duplicate strategy is FAIL. The pages
+ * written before it are kept in the checkpoint journal.
+ *
+ * @author pmreid
+ */
+public class DuplicateIdentifierException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DuplicateIdentifierException(String filename, int firstPage, int pageNumber) {
+        super("Pages " + (firstPage + 1) + " and " + (pageNumber + 1) + " would both be written to " + filename);
+    }
+}
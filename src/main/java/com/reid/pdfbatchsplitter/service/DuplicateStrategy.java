@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+/**
+ * What to do when two pages of a run resolve to the same output filename,
+ * ie the same complete identifier
+ *
+ * @author pmreid
+ */
+public enum DuplicateStrategy {
+
+    /**
+     * Write the later page under the same name with a counter added, eg
+     * Pre_1234_A100000_2.pdf
+     */
+    SUFFIX_COUNTER,
+    /**
+     * Add the later page to the file of the earlier one, so that the file
+     * holds every page with that identifier, in page order
+     */
+    MERGE,
+    /**
+     * Stop the run with a DuplicateIdentifierException before the later page
+     * is written
+     */
+    FAIL
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.PDFBatchSplitter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the output filenames of a run, so that two pages resolving to the
+ * same identifier are caught as they are named, rather than the second
+ * silently overwriting the first. Each lookup is a single hash probe, and
+ * collisions are resolved by a DuplicateStrategy and recorded in the run
+ * metrics.
+ *
+ * Filenames must be added in page order, from a single thread.
+ *
+ * @author pmreid
+ */
+class IdentifierIndex {
+
+    private final Map<String, List<Integer>> pagesByFilename = new HashMap<>(); // pages written to each filename, in order
+    private final DuplicateStrategy strategy;
+    private final RunMetrics metrics;
+
+    IdentifierIndex(DuplicateStrategy s, RunMetrics m) {
+        this.strategy = s;
+        this.metrics = m;
+    }
+
+    /**
+     * Adds the filename of a page, resolving any collision with an earlier
+     * page
+     *
+     * @param pageNumber page number in the source, from 0
+     * @param filename filename worked out from the page's identifiers
+     * @return filename to write the page to
+     * @throws DuplicateIdentifierException if the filename is already taken
+     * and the strategy is FAIL
+     */
+    String add(int pageNumber, String filename) throws DuplicateIdentifierException {
+        List<Integer> pages = pagesByFilename.get(filename);
+        if (pages == null) {
+            pagesByFilename.put(filename, new ArrayList<>(Collections.singletonList(pageNumber)));
+            return filename;
+        }
+        int firstPage = pages.get(0);
+        switch (this.strategy) {
+            case MERGE:
+                pages.add(pageNumber);
+                metrics.recordCollision(filename, firstPage, pageNumber, filename);
+                return filename;
+            case FAIL:
+                metrics.recordCollision(filename, firstPage, pageNumber, null);
+                throw new DuplicateIdentifierException(filename, firstPage, pageNumber);
+            default:
+                int dot = filename.lastIndexOf('.');
+                String name = dot < 0 ? filename : filename.substring(0, dot);
+                String extension = dot < 0 ? "" : filename.substring(dot);
+                int counter = 2;
+                String suffixed;
+                while (pagesByFilename.containsKey(suffixed = name + PDFBatchSplitter.DEFAULT_SEPARATOR + counter + extension)) {
+                    counter++; // taken by an earlier duplicate, or a page whose own identifier ends in a counter
+                }
+                pagesByFilename.put(suffixed, new ArrayList<>(Collections.singletonList(pageNumber)));
+                metrics.recordCollision(filename, firstPage, pageNumber, suffixed);
+                return suffixed;
+        }
+    }
+
+    /**
+     * Adds the filename of a page that couldn't be read, which is numbered
+     * so that it never collides
+     *
+     * @param pageNumber page number in the source, from 0
+     * @param filename failure filename
+     */
+    void addFailure(int pageNumber, String filename) {
+        pagesByFilename.put(filename, new ArrayList<>(Collections.singletonList(pageNumber)));
+    }
+
+    /**
+     * Adds a page to the file of the page before it, when pages are grouped
+     * into documents; this is never a collision
+     *
+     * @param pageNumber page number in the source, from 0
+     * @param filename filename returned by add() for the first page of the
+     * document
+     */
+    void extend(int pageNumber, String filename) {
+        List<Integer> pages = pagesByFilename.get(filename);
+        if (pages != null) {
+            pages.add(pageNumber);
+        }
+    }
+
+    /**
+     * @param filename filename returned by add()
+     * @return pages written to the file so far, in page order; more than one
+     * only for merged or grouped pages
+     */
+    List<Integer> getPages(String filename) {
+        List<Integer> pages = pagesByFilename.get(filename);
+        return pages != null ? pages : Collections.<Integer>emptyList();
+    }
+}
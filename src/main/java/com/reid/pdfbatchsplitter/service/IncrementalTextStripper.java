@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+/**
+ * A PDFTextStripper which checks the SearchTerms against the text of a page
+ * line by line as it is written out, and stops as soon as every one of them
+ * has matched, rather than building the text of the whole page. A page which
+ * some SearchTerm doesn't match is read to the end, as the term could match
+ * anywhere on it.
+ *
+ * A match only counts once no more text could change it, ie the regex did not
+ * read up to the end of the text written so far, so the identifiers found in
+ * the first part of a page are the same as those found in the whole page.
+ * Each line the search carries on from the first position that could still
+ * match, so the matching costs little more than matching the whole page once.
+ *
+ * @author pmreid
+ */
+public class IncrementalTextStripper extends PDFTextStripper {
+
+    private final Matcher[] matchers;
+    private final boolean[] matched;
+    private final int[] from; // for each term, the first position in the text at which it could still match
+    private int unmatched;
+    private String stoppedText;
+
+    /**
+     * @param t SearchTerms to watch for; terms restricted to a region are
+     * ignored, as they are not matched against the full page text
+     * @throws IOException
+     */
+    public IncrementalTextStripper(List<SearchTerm> t) throws IOException {
+        List<Matcher> m = new ArrayList<>();
+        for (SearchTerm term : t) {
+            if (term.getRegion() == null) {
+                m.add(term.getPattern().matcher(""));
+            }
+        }
+        this.matchers = m.toArray(new Matcher[0]);
+        this.matched = new boolean[matchers.length];
+        this.from = new int[matchers.length];
+    }
+
+    /**
+     * Extracts the text of a single page, stopping early once every
+     * SearchTerm has matched
+     *
+     * @param doc loaded source document
+     * @param pageNum page number in the source document, starting at 0
+     * @return text of the page up to the line on which the last SearchTerm
+     * matched, or the whole page if they did not all match
+     * @throws IOException
+     */
+    public String getPageText(PDDocument doc, int pageNum) throws IOException {
+        setStartPage(pageNum + 1);
+        setEndPage(pageNum + 1);
+        stoppedText = null;
+        unmatched = matchers.length;
+        Arrays.fill(matched, false);
+        Arrays.fill(from, 0);
+        try {
+            return getText(doc);
+        } catch (StopExtraction stop) {
+            return stoppedText;
+        } finally {
+            for (Matcher matcher : matchers) {
+                matcher.reset("");
+            }
+        }
+    }
+
+    @Override
+    protected void writeLineSeparator() throws IOException {
+        super.writeLineSeparator();
+        if (matchers.length > 0 && output instanceof StringWriter) {
+            StringBuffer text = ((StringWriter) output).getBuffer();
+            for (int i = 0; i < matchers.length; i++) {
+                if (matched[i]) {
+                    continue;
+                }
+                boolean found = matchers[i].reset(text).find(from[i]);
+                if (matchers[i].hitEnd()) {
+                    continue; // more text could change the match, or make an earlier attempt succeed
+                }
+                if (found) {
+                    matched[i] = true;
+                    unmatched--;
+                } else {
+                    from[i] = text.length(); // no attempt so far can match, however the page goes on
+                }
+            }
+            if (unmatched == 0) {
+                stoppedText = text.toString();
+                throw new StopExtraction();
+            }
+        }
+    }
+
+    /**
+     * Thrown to unwind out of the text stripper once every SearchTerm has
+     * matched; unchecked so that it is not caught along the way by PDFBox
+     */
+    private static class StopExtraction extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        StopExtraction() {
+            super(null, null, false, false); // no stack trace is needed
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of latencies. Each power of two is split into four
+ * buckets, so any percentile read back is within 25% of the true value,
+ * which is plenty for finding where a run spends its time, while recording a
+ * sample costs only a few atomic adds.
+ *
+ * @author pmreid
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4; // buckets per power of two
+    private static final int SUB_BITS = 2;
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a single sample
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long seen;
+        while (nanos > (seen = max.get()) && !max.compareAndSet(seen, nanos)) {
+            // another thread recorded a new maximum first; try again
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(nanos);
+        return (msb - SUB_BITS + 1) * SUB_BUCKETS + (int) ((nanos >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return upper bound, in nanoseconds, of the values in a bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int msb = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lower = (1L << msb) + ((long) (bucket % SUB_BUCKETS) << (msb - SUB_BITS));
+        return lower + (1L << (msb - SUB_BITS)) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return sum of all samples, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / 1e6 / n;
+    }
+
+    /**
+     * Estimates a percentile from the buckets
+     *
+     * @param percentile eg 99 for the 99th percentile
+     * @return estimated latency in milliseconds, never more than the largest
+     * sample
+     */
+    public double getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get()) / 1e6;
+            }
+        }
+        return max.get() / 1e6;
+    }
+
+    /**
+     * @return summary of the histogram as a JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT, "{\"count\": %d, \"totalMillis\": %.3f, \"meanMillis\": %.3f, \"p50Millis\": %.3f, "
+                + "\"p90Millis\": %.3f, \"p99Millis\": %.3f, \"maxMillis\": %.3f, \"buckets\": [",
+                getCount(), getTotalNanos() / 1e6, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90),
+                getPercentileMillis(99), getMaxNanos() / 1e6));
+        boolean first = true;
+        for (int i = 0; i < buckets.length(); i++) {
+            long inBucket = buckets.get(i);
+            if (inBucket > 0) { // only the buckets in use, as [upper bound in ms, count]
+                json.append(first ? "" : ", ").append(String.format(Locale.ROOT, "[%.6f, %d]", upperBoundOf(i) / 1e6, inBucket));
+                first = false;
+            }
+        }
+        return json.append("]}").toString();
+    }
+}
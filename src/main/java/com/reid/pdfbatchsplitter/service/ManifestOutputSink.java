@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Skips writing output files whose contents would not change, so that
+ * re-running a batch into a synced or backed-up destination only touches the
+ * files that are actually different.
+ *
+ * A manifest in the destination records the length, modification time and
+ * SHA-256 fingerprint of each file written. A write is skipped when the
+ * manifest holds the same fingerprint for the filename and the file on disk
+ * still has the recorded length and modification time, ie nothing else has
+ * changed it since. The pages must be saved deterministically for this to be
+ * of any use, which PDFSplitter does by giving each page a document ID
+ * derived from the source rather than a random one.
+ *
+ * @author pmreid
+ */
+public class ManifestOutputSink implements OutputSink {
+
+    public static final String MANIFEST_FILENAME = ".pdfbatchsplitter-manifest";
+    private static final String HEADER = "PDFBatchSplitter manifest 1";
+    private final OutputSink delegate;
+    private final File destination;
+    private final File manifestFile;
+    private final Map<String, String[]> manifest = new ConcurrentHashMap<>(); // filename to length, modification time and fingerprint
+    private final AtomicInteger unchanged = new AtomicInteger();
+
+    /**
+     * Loads the manifest left in the destination by earlier runs, if any
+     *
+     * @param d sink that writes the files
+     * @param destination destination directory, where the manifest is kept
+     * @throws IOException if the manifest can't be read
+     */
+    public ManifestOutputSink(OutputSink d, File destination) throws IOException {
+        this.delegate = d;
+        this.destination = destination;
+        this.manifestFile = new File(destination, MANIFEST_FILENAME);
+        if (this.manifestFile.isFile()) {
+            try (BufferedReader in = Files.newBufferedReader(this.manifestFile.toPath(), StandardCharsets.UTF_8)) {
+                if (HEADER.equals(in.readLine())) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        String[] entry = line.split("\t", 4);
+                        if (entry.length == 4) {
+                            this.manifest.put(entry[3], entry);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(int pageNumber, String filename, byte[] pdf) throws IOException {
+        String fingerprint = fingerprint(pdf);
+        File file = new File(this.destination, filename);
+        String[] entry = this.manifest.get(filename);
+        if (entry != null && entry[2].equals(fingerprint) && entry[0].equals(String.valueOf(pdf.length))
+                && file.length() == pdf.length && entry[1].equals(String.valueOf(file.lastModified()))) {
+            this.unchanged.incrementAndGet();
+            return;
+        }
+        this.delegate.write(pageNumber, filename, pdf);
+        this.manifest.put(filename, new String[]{String.valueOf(pdf.length), String.valueOf(file.lastModified()), fingerprint, filename});
+    }
+
+    /**
+     * @return number of writes skipped because the file was unchanged
+     */
+    public int getUnchangedCount() {
+        return this.unchanged.get();
+    }
+
+    /**
+     * Closes the underlying sink, then saves the manifest. Entries from
+     * earlier runs are kept, as a resumed run doesn't write every file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        this.delegate.close();
+        File saving = new File(this.destination, MANIFEST_FILENAME + ".tmp");
+        try (Writer out = Files.newBufferedWriter(saving.toPath(), StandardCharsets.UTF_8)) {
+            out.write(HEADER + "\n");
+            for (String[] entry : this.manifest.values()) {
+                out.write(String.join("\t", entry) + "\n");
+            }
+        }
+        Files.move(saving.toPath(), this.manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String fingerprint(byte[] pdf) throws IOException {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(pdf)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not available", ex);
+        }
+    }
+}
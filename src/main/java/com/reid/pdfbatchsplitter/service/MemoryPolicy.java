@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+/**
+ * Where PDFBox keeps the decoded streams of the documents it loads and
+ * creates: the source document and the single-page output documents
+ *
+ * @author pmreid
+ */
+public enum MemoryPolicy {
+
+    /**
+     * Everything on the heap, optionally up to a limit; the PDFBox default
+     */
+    HEAP,
+    /**
+     * On the heap up to a limit, then in temporary scratch files
+     */
+    MIXED,
+    /**
+     * Entirely in temporary scratch files, so that huge inputs can be split
+     * on a small heap
+     */
+    SCRATCH
+}
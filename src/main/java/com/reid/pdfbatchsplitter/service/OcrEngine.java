@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * A local OCR engine that PageRecogniser hands rendered pages to, eg
+ * TesseractOcrEngine. Implementations must allow recognise() to be called by
+ * several threads at once.
+ *
+ * @author pmreid
+ */
+public interface OcrEngine {
+
+    /**
+     * Recognises the text in an image
+     *
+     * @param image rendered page, or region of one
+     * @param dpi resolution the image was rendered at
+     * @return recognised text; empty if there is none
+     * @throws IOException if the engine fails
+     */
+    String recognise(BufferedImage image, int dpi) throws IOException;
+
+    /**
+     * @return name of the engine and any settings that change its results,
+     * eg "tesseract/eng", which keeps the cached results of different engines
+     * apart
+     */
+    String getName();
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for the split pages. Pages are handed over already saved as PDF
+ * bytes, so a sink never needs to touch a PDFBox document and can safely run
+ * on a different thread to the one that produced the page.
+ *
+ * Implementations must allow write() to be called by several threads at once.
+ *
+ * @author pmreid
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     * Writes a single output file
+     *
+     * @param pageNumber page number in the source document, starting at 0
+     * @param filename name of the output file, without any directory
+     * @param pdf complete contents of the output file
+     * @throws IOException if the file cannot be written
+     */
+    void write(int pageNumber, String filename, byte[] pdf) throws IOException;
+
+    /**
+     * Writes a single output file holding a run of consecutive pages, eg a
+     * multi-page document when pages are grouped. Sinks that don't keep track
+     * of the pages in each file can simply write it.
+     *
+     * @param firstPage page number of the first page in the file, starting
+     * at 0
+     * @param lastPage page number of the last page in the file
+     * @param filename name of the output file, without any directory
+     * @param pdf complete contents of the output file
+     * @throws IOException if the file cannot be written
+     */
+    default void write(int firstPage, int lastPage, String filename, byte[] pdf) throws IOException {
+        write(firstPage, filename, pdf);
+    }
+
+    /**
+     * Finishes writing, waiting for any outstanding writes
+     *
+     * @throws IOException if any write failed
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -18,20 +18,47 @@ package com.reid.pdfbatchsplitter.service;
 
 import com.reid.pdfbatchsplitter.PDFBatchSplitter;
 import com.reid.pdfbatchsplitter.domain.ComponentPage;
+import com.reid.pdfbatchsplitter.domain.PageProfile;
+import com.reid.pdfbatchsplitter.domain.SplitProgress;
 import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
 import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.io.RandomAccessReadMemoryMappedFile;
+import org.apache.pdfbox.io.RandomAccessStreamCache.StreamCacheCreateFunction;
 import org.apache.pdfbox.multipdf.Splitter;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
 
 /**
@@ -42,6 +69,13 @@ import org.apache.pdfbox.text.PDFTextStripper;
  */
 public class PDFSplitter {
 
+    private static final int PAGES_PER_CLAIM = 8; // number of pages a parallel worker takes from the source at a time
+    private static final String FAILURE_PREFIX = "AAA_FAILED_TO_READ_";
+    private static final long PROGRESS_INTERVAL_NANOS = 250000000L; // least time between progress updates
+    // estimated work, in characters of text extracted, used to size the worker pool after a pre-scan:
+    private static final int PAGE_WORK = 1000; // splitting out and writing a page, and setting up its extraction
+    private static final int RENDER_WORK = 20 * PAGE_WORK; // rendering a page for OCR
+    private static final int WORKER_WORK = 64 * PAGE_WORK; // least work worth loading another view of the source for
     private File destination;
     private File source;
     private List<SearchTerm> searchTerms;
@@ -50,6 +84,57 @@ public class PDFSplitter {
     private String suffix;
     private PDDocument sourcePDF;
     private boolean showPDFAsText; // used for debugging;
+    private Consumer<String> textViewer; // receives the text of one page when debugging, eg the MainWindow viewer
+    private int pageCount;
+    private int workerCount = 1; // number of threads used to process pages; 1 processes them on the calling thread
+    private int matchWindow; // characters either side of a SearchTerm's anchor to search; 0 searches the whole page
+    private long matchBudget; // milliseconds allowed for matching the SearchTerms against a page; 0 for no limit
+    private boolean lazyExtraction; // stop extracting a page's text once every SearchTerm has matched
+    private int writerThreads; // threads writing pages to the destination; 0 writes them on the thread that split them
+    private int writeQueueCapacity = 64; // pages that may wait to be written before splitting is held up
+    private OutputSink sink; // destination for the pages of the current run
+    private PageTextCache textCache; // text extracted by earlier runs, shared with them; null to extract every page
+    private String sourceHash; // identifies the source in the text cache and the document IDs of its pages
+    private boolean skipUnchanged; // leave output files alone when their contents would not change
+    private ManifestOutputSink manifest; // fingerprints of the files in the destination, when skipping unchanged files
+    private boolean resume = true; // carry on from the checkpoint journal left by an interrupted run
+    private CheckpointJournal journal; // records the pages of the current run as they are written
+    private int resumedCount; // pages of the last run that had already been written by an earlier one
+    private boolean compactOutput; // export pages with a PageImporter rather than splitting out a document per page
+    private MemoryPolicy memoryPolicy = MemoryPolicy.HEAP; // where PDFBox keeps the streams of each document
+    private long memoryLimit = -1; // heap bytes per document for HEAP and MIXED; -1 is unlimited for HEAP
+    private File scratchDirectory; // where MIXED and SCRATCH put their temporary files; null for the system default
+    private boolean memoryMapped; // read the source through a memory-mapped file rather than a buffered one
+    private RunMetrics metrics = new RunMetrics(""); // timings and figures for the current or last run
+    private boolean jmxEnabled; // publish the metrics of each run over JMX
+    private ProgressListener progressListener; // told how the run is going; null if nobody is listening
+    private volatile boolean cancelled; // set by cancel(), and checked before each page
+    private final AtomicInteger pagesExtracted = new AtomicInteger();
+    private final AtomicInteger pagesInterpreted = new AtomicInteger();
+    private final AtomicInteger pagesWritten = new AtomicInteger();
+    private final Object progressLock = new Object(); // guards the fields below, and keeps updates in order
+    private int progressTotal;
+    private long progressStart;
+    private long lastProgress; // when the last update was published
+    private int lastDone; // pages interpreted plus pages written at the last update
+    private double recentRate = -1; // smoothed pages per second; -1 until the first interval has passed
+    private AtomicLongArray pageBytes = new AtomicLongArray(0); // bytes written for each source page in the last run
+    private int numFailures; // running count of pages that could not be interpreted, used to number the failure files
+    private DuplicateStrategy duplicateStrategy = DuplicateStrategy.SUFFIX_COUNTER; // what to do when two pages share a filename
+    private IdentifierIndex identifiers; // filenames given out in the current run
+    private boolean groupPages; // write each run of pages with the same primary identifier as one document
+    private SearchTerm documentStartTerm; // also starts a new document when pages are grouped; null if there is none
+    private PageRecogniser recogniser; // OCRs pages with no text layer that couldn't be interpreted; null to leave them
+    private final AtomicInteger pagesRecognised = new AtomicInteger();
+    private boolean preScan; // classify the pages from their content streams before extracting any text
+    private int workersUsed; // workers the last run actually used, which a pre-scan may have cut down
+    private BlankPagePolicy blankPolicy = BlankPagePolicy.KEEP; // what to do with blank pages and separator sheets
+    private BlankPageDetector blankDetector = new BlankPageDetector();
+    private SearchTerm separatorTerm; // marks separator sheets, when they aren't kept; null if there is none
+    private ArchiveFormat archiveFormat; // streams the output files into archives of this format; null to write them to the directory
+    private int archiveLevel = -1; // compression level of the archives, or -1 for the default
+    private int archivePages; // pages after which a new archive is started; 0 for one archive per source
+    private ArchiveOutputSink archive; // archive sink of the current or last run, if any
 
     /**
      * Instantiates a new Splitter object with known Java File objects for the
@@ -106,10 +191,14 @@ public class PDFSplitter {
      */
     public boolean readPDF() {
         boolean goodRead = true;
+        startMetrics();
         try {
-            sourcePDF = Loader.loadPDF(new RandomAccessReadBufferedFile(source));
+            sourcePDF = openSource();
             Splitter PDFSplitter = new Splitter();
+            PDFSplitter.setStreamCacheCreateFunction(getStreamCache());
+            long start = System.nanoTime();
             List<PDDocument> allPages = PDFSplitter.split(sourcePDF);
+            metrics.record(RunMetrics.Stage.SPLIT, start); // the whole document is split at once, so this is a single sample
             PDFTextStripper reader = new PDFTextStripper();
             int pageNum = 0;
             int randomDisplayPage = 0;
@@ -119,16 +208,19 @@ public class PDFSplitter {
             }
 
             for (PDDocument thisPage : allPages) {
+                start = System.nanoTime();
                 ComponentPage p = new ComponentPage(thisPage, reader.getText(thisPage), pageNum);
+                metrics.record(RunMetrics.Stage.EXTRACT, start);
                 pages.add(p);
 
                 if (this.showPDFAsText) {
                     if (pageNum == randomDisplayPage) {
-                        PDFBatchSplitter.mw.updatePDFViewer(p.getPageContents());
+                        showText(p.getPageContents());
                     }
                 }
                 pageNum++;
             }
+            this.pageCount = pages.size();
 
         } catch (IOException ex) {
             System.out.println("Error loading PDF: " + ex.getLocalizedMessage());
@@ -148,49 +240,1372 @@ public class PDFSplitter {
      * ComponentPages
      */
     public void interpretPDFPages() {
+        PageInterpreter interpreter = new PageInterpreter(searchTerms, matchWindow);
+        interpreter.setTimeBudget(matchBudget);
+        interpreter.setMetrics(metrics);
         for (ComponentPage page : pages) {
-            boolean primaryIdentifier = true; // the first element of the SearchTerm list is the primary identifier to use; all subsequent elements are merely 'additional' identifiers
-            for (SearchTerm search : searchTerms) {
-                Pattern pat;
-                pat = Pattern.compile(search.getRegex(), Pattern.DOTALL);
-                Matcher matcher = pat.matcher(page.getPageContents());
-                if (matcher.find()) {
-                    String identifier = matcher.group(search.getOutputGroup()).trim();
-                    page.setInterpreted(true);
-                    if (primaryIdentifier) {
-                        page.setIdentifier(identifier);
-                    } else {
-                        page.appendIdentifier(identifier);
+            long start = System.nanoTime();
+            interpreter.interpret(page);
+            metrics.record(RunMetrics.Stage.MATCH, start);
+        }
+    }
+
+    /**
+     * Writes a batch of PDF files
+     *
+     * @return true on success
+     * @throws java.io.IOException
+     */
+    public boolean writeBatch() throws IOException {
+        boolean success = true;
+        numFailures = 0;
+        identifiers = new IdentifierIndex(duplicateStrategy, metrics);
+        pageBytes = new AtomicLongArray(pages.size());
+        journal = null; // the whole batch is already in memory, so there is nothing to resume
+        resumedCount = 0;
+        sink = openSink();
+        boolean completed = false;
+        try {
+            for (ComponentPage page : pages) {
+                checkCancelled();
+                savePage(page);
+            }
+            completed = true;
+        } finally {
+            try {
+                closeSink(completed);
+                sourcePDF.close();
+            } finally {
+                metrics.finish();
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Streams the source PDF one page at a time: each page is split out,
+     * its text extracted and interpreted, and then written to the destination
+     * and closed before the next page is touched. Unlike readPDF(), no List of
+     * pages is built up, so memory use stays flat however large the batch is
+     *
+     * @return true on success
+     * @throws java.io.IOException
+     */
+    public boolean processPages() throws IOException {
+        startMetrics();
+        try {
+            boolean success = streamPages();
+            publishProgress(true);
+            return success;
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * Does the work of processPages()
+     */
+    private boolean streamPages() throws IOException {
+        sourceHash = textCache != null || skipUnchanged ? PageTextCache.hash(source) : null;
+        sourcePDF = openSource();
+        PageWorker worker = new PageWorker(sourcePDF);
+        try {
+            journal = openJournal();
+            sink = openSink();
+        } catch (IOException ex) {
+            worker.close();
+            throw ex;
+        }
+        boolean completed = false;
+        OutputDocument document = null; // the document pages are being grouped into
+        String documentFilename = null;
+        String documentIdentifier = null; // primary identifier of the document's first page, or null if it couldn't be read
+        try {
+            int totalPages = sourcePDF.getNumberOfPages();
+            int displayPage = selectDisplayPage(totalPages);
+            numFailures = 0;
+            identifiers = new IdentifierIndex(duplicateStrategy, metrics);
+            pageCount = 0;
+            pageBytes = new AtomicLongArray(totalPages);
+            PageProfile[] profiles = preScan ? scanPages(sourcePDF) : null;
+            workersUsed = 1;
+            startProgress(totalPages);
+            for (int pageNum = 0; pageNum < totalPages; pageNum++) {
+                checkCancelled();
+                if (resumePage(pageNum)) {
+                    if (document != null) { // a page written by an earlier run always starts a document of its own
+                        writeDocument(worker, document, documentFilename);
+                        document.close();
+                        document = null;
+                    }
+                    pageCount++;
+                    continue;
+                }
+                PageProfile profile = profiles != null ? profiles[pageNum] : null;
+                ComponentPage p = worker.read(pageNum, pageNum == displayPage, profile);
+                pagesExtracted.incrementAndGet();
+                if (pageNum == displayPage) {
+                    showText(p.getPageContents());
+                }
+                long start = System.nanoTime();
+                worker.interpreter.interpret(p);
+                metrics.record(RunMetrics.Stage.MATCH, start);
+                worker.detectBlank(p, profile);
+                if (needsRecognising(p, profile)) {
+                    start = System.nanoTime();
+                    try {
+                        p = worker.interpretRecognised(pageNum, recogniser.recognise(worker.view, pageNum));
+                        pagesRecognised.incrementAndGet();
+                    } catch (IOException ex) {
+                        notRecognised(pageNum, ex); // p is left uninterpreted, so is written as a failure
+                    }
+                    metrics.record(RunMetrics.Stage.OCR, start);
+                }
+                pagesInterpreted.incrementAndGet();
+                p.releaseContents(); // only the identifiers are needed from here on
+                if (isDropped(p)) {
+                    recordDropped(p);
+                    if (groupPages && document != null && blankPolicy == BlankPagePolicy.DROP) {
+                        document.drop(); // written as part of the document if a later page carries it on
+                        continue;
+                    }
+                    if (document != null && blankPolicy == BlankPagePolicy.BOUNDARY) {
+                        writeDocument(worker, document, documentFilename);
+                        document.close();
+                        document = null;
+                    }
+                    pagesWritten.incrementAndGet(); // nothing to write
+                    continue;
+                }
+                if (groupPages && document != null && continuesDocument(documentIdentifier, p)) {
+                    document.add(pageNum);
+                    identifiers.extend(pageNum, documentFilename);
+                } else if (groupPages) {
+                    if (document != null) {
+                        writeDocument(worker, document, documentFilename);
+                        document.close();
+                        document = null;
+                    }
+                    documentFilename = getOutputFilename(p);
+                    documentIdentifier = p.isInterpreted() ? p.getIdentifier() : null;
+                    document = worker.startDocument(pageNum);
+                } else {
+                    String filename = getOutputFilename(p);
+                    List<Integer> merged = identifiers.getPages(filename);
+                    // a merged file is written again with each page added to it, so it is complete whenever the run stops:
+                    writePage(pageNum, filename, merged.size() > 1 ? worker.exportPages(merged) : worker.exportPage(pageNum));
+                }
+                pageCount++;
+            }
+            if (document != null) {
+                writeDocument(worker, document, documentFilename);
+            }
+            completed = true;
+        } finally {
+            try {
+                if (document != null) {
+                    document.close();
+                }
+                closeSink(completed); // waits for any pages still being written
+            } finally {
+                worker.close(); // also closes sourcePDF
+            }
+        }
+        finishJournal();
+        return true;
+    }
+
+    /**
+     * Splits the source PDF using as many workers as have been configured: a
+     * single worker streams the pages on the calling thread, while more than
+     * one uses the parallel engine. Any cancel() left over from an earlier
+     * run is cleared first.
+     *
+     * @return true on success
+     * @throws java.io.IOException
+     */
+    public boolean process() throws IOException {
+        this.cancelled = false;
+        if (this.workerCount > 1) {
+            return processParallel();
+        } else {
+            return processPages();
+        }
+    }
+
+    /**
+     * Splits the source PDF across a pool of workers. Each worker loads its
+     * own view of the source document and has its own text extractor, as
+     * PDFBox documents are not thread safe, and takes small ranges of pages at
+     * a time from a shared counter.
+     *
+     * The work is done in two passes: the first extracts and interprets the
+     * text of every page, after which the filenames are worked out in page
+     * order (so that the AAA_FAILED_TO_READ_n numbering matches the
+     * sequential path); the second splits out and saves each page.
+     *
+     * @return true on success
+     * @throws java.io.IOException
+     */
+    public boolean processParallel() throws IOException {
+        startMetrics();
+        try {
+            boolean success = splitInParallel();
+            publishProgress(true);
+            return success;
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * Does the work of processParallel()
+     */
+    private boolean splitInParallel() throws IOException {
+        sourceHash = textCache != null || skipUnchanged ? PageTextCache.hash(source) : null;
+        sourcePDF = openSource();
+        final int totalPages = sourcePDF.getNumberOfPages();
+        final PageProfile[] profiles;
+        try {
+            profiles = preScan ? scanPages(sourcePDF) : null;
+        } catch (IOException ex) {
+            sourcePDF.close();
+            throw ex;
+        }
+        workersUsed = profiles != null ? sizePool(profiles) : this.workerCount;
+        final PageWorker[] workers = new PageWorker[workersUsed];
+        final ComponentPage[] interpreted = new ComponentPage[totalPages];
+        final boolean[] unreadable = new boolean[totalPages]; // pages to be recognised with OCR
+        final String[] filenames = new String[totalPages]; // null for pages added to the document of an earlier page
+        final int[] lastPages = new int[totalPages]; // last page in the output file of each page that starts one
+        final int displayPage = selectDisplayPage(totalPages);
+        pageBytes = new AtomicLongArray(totalPages);
+        startProgress(totalPages);
+        journal = null;
+        sink = null;
+        boolean completed = false;
+        ExecutorService pool = Executors.newFixedThreadPool(workersUsed);
+        try {
+            workers[0] = new PageWorker(sourcePDF); // the first worker re-uses the document already loaded
+            journal = openJournal();
+
+            // first pass: extract and interpret the text of each page
+            runWorkers(pool, workers, totalPages, new PageTask() {
+                @Override
+                public void process(PageWorker worker, int pageNum) throws IOException {
+                    if (journal != null && journal.isComplete(pageNum)) {
+                        return; // written by an earlier run
+                    }
+                    PageProfile profile = profiles != null ? profiles[pageNum] : null;
+                    ComponentPage p = worker.read(pageNum, pageNum == displayPage, profile);
+                    pagesExtracted.incrementAndGet();
+                    long start = System.nanoTime();
+                    worker.interpreter.interpret(p);
+                    metrics.record(RunMetrics.Stage.MATCH, start);
+                    worker.detectBlank(p, profile);
+                    unreadable[pageNum] = needsRecognising(p, profile);
+                    pagesInterpreted.incrementAndGet();
+                    publishProgress(false);
+                    if (pageNum != displayPage) {
+                        p.releaseContents(); // only the debug page needs its text kept
+                    }
+                    interpreted[pageNum] = p;
+                }
+            });
+            if (recogniser != null) {
+                recognisePages(pool, workers, unreadable, interpreted);
+            }
+            if (displayPage >= 0 && interpreted[displayPage] != null) {
+                showText(interpreted[displayPage].getPageContents());
+            }
+
+            // filenames are allocated in page order, so failures are numbered exactly as they are sequentially:
+            numFailures = 0;
+            identifiers = new IdentifierIndex(duplicateStrategy, metrics);
+            int document = -1; // first page of the document pages are being grouped into
+            String documentIdentifier = null;
+            int dropped = 0;
+            int bridged = 0; // pages dropped since the last page of the document, which it covers if a later page carries it on
+            for (int pageNum = 0; pageNum < totalPages; pageNum++) {
+                if (resumePage(pageNum)) {
+                    document = -1; // a page written by an earlier run always starts a document of its own
+                } else if (isDropped(interpreted[pageNum])) {
+                    recordDropped(interpreted[pageNum]);
+                    dropped++;
+                    if (groupPages && document >= 0 && blankPolicy == BlankPagePolicy.DROP) {
+                        bridged++;
+                        continue;
+                    }
+                    if (blankPolicy == BlankPagePolicy.BOUNDARY) {
+                        document = -1;
+                    }
+                    pagesWritten.incrementAndGet(); // nothing to write
+                } else if (groupPages && document >= 0 && continuesDocument(documentIdentifier, interpreted[pageNum])) {
+                    identifiers.extend(pageNum, filenames[document]);
+                    lastPages[document] = pageNum;
+                    bridged = 0;
+                    continue;
+                } else {
+                    filenames[pageNum] = getOutputFilename(interpreted[pageNum]);
+                    lastPages[pageNum] = pageNum;
+                    document = pageNum;
+                    documentIdentifier = interpreted[pageNum].isInterpreted() ? interpreted[pageNum].getIdentifier() : null;
+                }
+                pagesWritten.addAndGet(bridged); // the document ended before them, so there is nothing to write
+                bridged = 0;
+            }
+            pagesWritten.addAndGet(bridged);
+
+            // second pass: split out and save each page
+            sink = openSink();
+            runWorkers(pool, workers, totalPages, new PageTask() {
+                @Override
+                public void process(PageWorker worker, int pageNum) throws IOException {
+                    if (interpreted[pageNum] == null || filenames[pageNum] == null) {
+                        return; // written by an earlier run, or part of a document started by an earlier page
+                    }
+                    List<Integer> pages = identifiers.getPages(filenames[pageNum]);
+                    int lastPage = lastPages[pageNum];
+                    if (pages.size() <= lastPage - pageNum + 1) { // the file holds only this page, or this grouped document
+                        writePages(pageNum, lastPage, filenames[pageNum], lastPage == pageNum ? worker.exportPage(pageNum) : worker.exportPages(pages));
+                        return;
+                    }
+                    // each write of a merged file replaces the last, so one worker writes all of its parts in order, as the sequential path does:
+                    int first = 0;
+                    while (!isPending(pages.get(first))) {
+                        first++;
+                    }
+                    if (pageNum == pages.get(first)) {
+                        for (int i = first; i < pages.size(); i++) {
+                            if (isPending(pages.get(i))) {
+                                int last = lastPages[pages.get(i)];
+                                writePages(pages.get(i), last, filenames[pageNum], worker.exportPages(pages.subList(0, pages.indexOf(last) + 1)));
+                            }
+                        }
                     }
-                    primaryIdentifier = false;
                 }
+
+                /**
+                 * @return true if the page starts an output file, or part of
+                 * one, still to be written in this run
+                 */
+                private boolean isPending(int pageNum) {
+                    return interpreted[pageNum] != null && filenames[pageNum] != null;
+                }
+            });
+            pageCount = totalPages - dropped;
+            completed = true;
+        } finally {
+            pool.shutdownNow();
+            try {
+                if (sink != null) {
+                    closeSink(completed); // waits for any pages still being written, and closes the journal
+                } else if (journal != null) {
+                    journal.close();
+                }
+            } finally {
+                for (PageWorker worker : workers) {
+                    if (worker != null) {
+                        worker.close();
+                    }
+                }
+                sourcePDF.close(); // in case the first worker was never created
+            }
+        }
+        finishJournal();
+        return true;
+    }
+
+    /**
+     * Runs a PageTask over every page of the source document, with one
+     * PageWorker per thread. Each worker repeatedly claims the next range of
+     * pages until none remain. Once any worker fails, the others stop before
+     * their next page, rather than carrying on through pages whose results
+     * will be thrown away.
+     *
+     * @param pool thread pool with at least as many threads as there are
+     * workers
+     * @param workers per-thread workers; empty slots are created, loading
+     * their own view of the source, by the thread that owns them
+     * @param totalPages number of pages in the source document
+     * @param task work to carry out on each page
+     * @throws IOException if any page fails
+     */
+    private void runWorkers(ExecutorService pool, final PageWorker[] workers, final int totalPages, final PageTask task) throws IOException {
+        final AtomicInteger nextPage = new AtomicInteger(0);
+        final AtomicBoolean failed = new AtomicBoolean(); // set by the first worker to fail, so that the others stop too
+        List<Future<Void>> running = new ArrayList<>();
+        for (int w = 0; w < workers.length; w++) {
+            final int worker = w;
+            running.add(pool.submit(() -> {
+                try {
+                    if (workers[worker] == null) {
+                        workers[worker] = new PageWorker(openSource());
+                    }
+                    int start;
+                    while (!failed.get() && (start = nextPage.getAndAdd(PAGES_PER_CLAIM)) < totalPages) {
+                        int end = Math.min(start + PAGES_PER_CLAIM, totalPages);
+                        for (int pageNum = start; pageNum < end && !failed.get(); pageNum++) {
+                            checkCancelled();
+                            task.process(workers[worker], pageNum);
+                        }
+                    }
+                    return null;
+                } catch (Throwable ex) {
+                    failed.set(true);
+                    throw ex;
+                }
+            }));
+        }
+        await(running);
+    }
+
+    /**
+     * Waits for tasks submitted to a pool to finish
+     *
+     * @param tasks submitted tasks
+     * @throws IOException if any of them failed
+     */
+    private static void await(List<Future<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while splitting the PDF", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Error splitting the PDF: " + ex.getCause().getLocalizedMessage(), ex.getCause());
+        }
+    }
+
+    /**
+     * Recognises the pages that have no text layer with OCR, between the two
+     * passes of the parallel engine, and interprets them again. The workers
+     * render the pages from their own views of the source while a separate
+     * pool runs the OCR engine, with the number of rendered images waiting
+     * for it limited, as each is several megabytes. Pages already in the
+     * recogniser's cache are not rendered at all.
+     *
+     * @param pool thread pool the workers run on
+     * @param workers per-thread workers
+     * @param unreadable pages to be recognised
+     * @param interpreted interpreted pages, which are replaced with the
+     * recognised ones; pages which can't be rendered or recognised are left
+     * as they are, and so are written as failures
+     * @throws IOException if interrupted
+     */
+    private void recognisePages(ExecutorService pool, PageWorker[] workers, final boolean[] unreadable, ComponentPage[] interpreted) throws IOException {
+        final String[] texts = new String[unreadable.length];
+        final Semaphore inFlight = new Semaphore(recogniser.getMaxInFlight());
+        final List<Future<Void>> recognising = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService ocrPool = Executors.newFixedThreadPool(recogniser.getThreads());
+        try {
+            runWorkers(pool, workers, unreadable.length, new PageTask() {
+                @Override
+                public void process(PageWorker worker, final int pageNum) throws IOException {
+                    if (!unreadable[pageNum]) {
+                        return;
+                    }
+                    final long start = System.nanoTime();
+                    final String key;
+                    try {
+                        key = recogniser.getCacheKey(worker.view.getPage(pageNum));
+                        texts[pageNum] = recogniser.getCached(key);
+                    } catch (IOException ex) {
+                        notRecognised(pageNum, ex);
+                        return;
+                    }
+                    if (texts[pageNum] != null) {
+                        return;
+                    }
+                    try {
+                        inFlight.acquire(); // held up while the OCR engine is behind
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting to render page " + (pageNum + 1), ex);
+                    }
+                    final BufferedImage image;
+                    try {
+                        image = recogniser.render(worker.view, pageNum);
+                    } catch (IOException ex) {
+                        inFlight.release();
+                        notRecognised(pageNum, ex);
+                        return;
+                    } catch (RuntimeException ex) {
+                        inFlight.release();
+                        throw ex;
+                    }
+                    recognising.add(ocrPool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            try {
+                                texts[pageNum] = recogniser.recognise(image, key);
+                            } catch (IOException ex) {
+                                notRecognised(pageNum, ex);
+                            } finally {
+                                inFlight.release();
+                            }
+                            metrics.record(RunMetrics.Stage.OCR, start);
+                            return null;
+                        }
+                    }));
+                }
+            });
+            synchronized (recognising) {
+                await(recognising);
+            }
+        } finally {
+            ocrPool.shutdownNow();
+        }
+        for (int pageNum = 0; pageNum < texts.length; pageNum++) {
+            if (texts[pageNum] != null) {
+                interpreted[pageNum] = workers[0].interpretRecognised(pageNum, texts[pageNum]);
+                interpreted[pageNum].releaseContents();
+                pagesRecognised.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A unit of work carried out on a single page by one of the parallel
+     * workers
+     */
+    private interface PageTask {
+
+        void process(PageWorker worker, int pageNum) throws IOException;
+    }
+
+    /**
+     * Everything one thread needs to process pages: its own view of the
+     * source document and its own text extractor, interpreter and page
+     * exporter, none of which are thread safe
+     */
+    private class PageWorker implements Closeable {
+
+        private final PDDocument view;
+        private final PageTextExtractor reader;
+        private final PageInterpreter interpreter;
+        private PageImporter importer; // only created when compact output is on
+        private final PageClassifier classifier = new PageClassifier(); // profiles pages with no text when there was no pre-scan
+
+        PageWorker(PDDocument v) throws IOException {
+            this.view = v;
+            List<SearchTerm> extracted = searchTerms;
+            if (groupPages && documentStartTerm != null || blankPolicy != BlankPagePolicy.KEEP && separatorTerm != null) {
+                extracted = new ArrayList<>(searchTerms);
+                if (groupPages && documentStartTerm != null) {
+                    extracted.add(documentStartTerm); // so that its text is extracted too
+                }
+                if (blankPolicy != BlankPagePolicy.KEEP && separatorTerm != null) {
+                    extracted.add(separatorTerm);
+                }
+            }
+            this.reader = new PageTextExtractor(extracted, lazyExtraction);
+            this.reader.setCache(textCache, sourceHash);
+            this.interpreter = new PageInterpreter(searchTerms, matchWindow);
+            this.interpreter.setTimeBudget(matchBudget);
+            this.interpreter.setMetrics(metrics);
+            this.interpreter.setDocumentStartTerm(groupPages ? documentStartTerm : null);
+            this.interpreter.setSeparatorTerm(blankPolicy != BlankPagePolicy.KEEP ? separatorTerm : null);
+        }
+
+        /**
+         * Flags an interpreted page as blank if it has no text and the
+         * BlankPageDetector finds nothing on it, unless blank pages are kept
+         *
+         * @param page interpreted ComponentPage, with its contents
+         * @param profile the page's profile from the pre-scan, or null to
+         * profile it now
+         * @throws IOException if the page can't be read or rendered
+         */
+        void detectBlank(ComponentPage page, PageProfile profile) throws IOException {
+            if (blankPolicy == BlankPagePolicy.KEEP || page.isInterpreted() || page.isOverBudget() || page.isSeparator() || page.hasText()) {
+                return;
+            }
+            long start = System.nanoTime();
+            if (profile == null) {
+                profile = classifier.classify(view.getPage(page.getPageNumber()));
+            }
+            page.setBlank(blankDetector.isBlank(view, page.getPageNumber(), profile));
+            metrics.record(RunMetrics.Stage.DETECT, start);
+        }
+
+        /**
+         * Extracts the text of a page, unless a pre-scan found it has none
+         *
+         * @param pageNum page number in the source document, starting at 0
+         * @param keepText true to keep the text of the page for debugging
+         * @param profile the page's profile from the pre-scan, or null if
+         * there was none
+         * @return uninterpreted ComponentPage
+         * @throws IOException
+         */
+        ComponentPage read(int pageNum, boolean keepText, PageProfile profile) throws IOException {
+            if (profile != null && !profile.hasText()) {
+                return new ComponentPage(null, "", pageNum); // a blank page or a scan, so there is nothing to extract
+            }
+            long start = System.nanoTime();
+            ComponentPage page = reader.extract(view, pageNum, keepText);
+            metrics.record(RunMetrics.Stage.EXTRACT, start);
+            return page;
+        }
+
+        /**
+         * Saves a single page of the source as a complete PDF
+         *
+         * @param pageNum page number in the source document, starting at 0
+         * @return contents of the single-page PDF
+         * @throws IOException
+         */
+        byte[] exportPage(int pageNum) throws IOException {
+            if (compactOutput) {
+                PageImporter importer = getImporter();
+                long start = System.nanoTime();
+                byte[] pdf = importer.exportPage(view, pageNum, getDocumentId(pageNum));
+                metrics.record(RunMetrics.Stage.SPLIT, start);
+                return pdf;
+            }
+            long start = System.nanoTime();
+            PDDocument page = extractPage(view, pageNum);
+            metrics.record(RunMetrics.Stage.SPLIT, start);
+            try {
+                setDocumentId(page, getDocumentId(pageNum));
+                start = System.nanoTime();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                page.save(out);
+                metrics.record(RunMetrics.Stage.SAVE, start);
+                return out.toByteArray();
+            } finally {
+                page.close();
+            }
+        }
+
+        /**
+         * Interprets the text of a page recognised with OCR, in place of its
+         * missing text layer
+         *
+         * @param pageNum page number in the source document, starting at 0
+         * @param text recognised text
+         * @return newly interpreted ComponentPage
+         */
+        ComponentPage interpretRecognised(int pageNum, String text) {
+            ComponentPage page = new ComponentPage(null, text, pageNum); // without region contents, terms with a region search all of the text
+            long start = System.nanoTime();
+            interpreter.interpret(page);
+            metrics.record(RunMetrics.Stage.MATCH, start);
+            return page;
+        }
+
+        /**
+         * Saves several pages of the source as a single PDF
+         *
+         * @param pageNums page numbers in the source document, starting at 0
+         * @return contents of the PDF
+         * @throws IOException
+         */
+        byte[] exportPages(List<Integer> pageNums) throws IOException {
+            return PDFSplitter.this.exportPages(view, compactOutput ? getImporter() : null, pageNums);
+        }
+
+        /**
+         * Starts an output document to add pages to one at a time, eg when
+         * grouping pages
+         *
+         * @param pageNum page number of its first page, starting at 0
+         * @return new OutputDocument; must be closed after use
+         * @throws IOException
+         */
+        OutputDocument startDocument(int pageNum) throws IOException {
+            return new OutputDocument(view, compactOutput ? getImporter() : null, pageNum);
+        }
+
+        private PageImporter getImporter() {
+            if (importer == null) {
+                importer = new PageImporter(getStreamCache());
+            }
+            return importer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (importer != null) {
+                    importer.close();
+                }
+            } finally {
+                view.close();
+            }
+        }
+    }
+
+    /**
+     * Loads the source PDF file
+     *
+     * @return loaded source document; the caller is responsible for closing it
+     * @throws IOException
+     */
+    private PDDocument openSource() throws IOException {
+        RandomAccessRead in;
+        if (this.memoryMapped && source.length() <= Integer.MAX_VALUE) {
+            in = new RandomAccessReadMemoryMappedFile(source); // a single mapping can't exceed 2GB, so larger files are buffered instead
+        } else {
+            in = new RandomAccessReadBufferedFile(source);
+        }
+        try {
+            long start = System.nanoTime();
+            PDDocument doc = Loader.loadPDF(in, getStreamCache());
+            metrics.record(RunMetrics.Stage.LOAD, start);
+            return doc;
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates the stream cache factory for the configured memory policy,
+     * which decides where PDFBox keeps the streams of each document
+     *
+     * @return stream cache factory for Loader, Splitter and PDDocument
+     */
+    private StreamCacheCreateFunction getStreamCache() {
+        MemoryUsageSetting setting;
+        switch (this.memoryPolicy) {
+            case MIXED:
+                setting = MemoryUsageSetting.setupMixed(Math.max(0, this.memoryLimit));
+                break;
+            case SCRATCH:
+                setting = MemoryUsageSetting.setupTempFileOnly();
+                break;
+            default:
+                if (this.memoryLimit < 0) {
+                    return IOUtils.createMemoryOnlyStreamCache();
+                }
+                setting = MemoryUsageSetting.setupMainMemoryOnly(this.memoryLimit);
+        }
+        if (this.scratchDirectory != null) {
+            setting.setTempDir(this.scratchDirectory);
+        }
+        return setting.streamCache;
+    }
+
+    /**
+     * Splits a single page out of a loaded source document into its own
+     * PDDocument, in the same way as splitting the whole document would
+     *
+     * @param doc loaded source document
+     * @param pageNum page number in the source document, starting at 0
+     * @return new single-page document; must be closed after use
+     * @throws IOException
+     */
+    private PDDocument extractPage(PDDocument doc, int pageNum) throws IOException {
+        Splitter pageSplitter = new Splitter();
+        pageSplitter.setStreamCacheCreateFunction(getStreamCache());
+        pageSplitter.setStartPage(pageNum + 1); // Splitter pages start at 1
+        pageSplitter.setEndPage(pageNum + 1);
+        return pageSplitter.split(doc).get(0);
+    }
+
+    /**
+     * Saves several pages of a loaded source document as a single PDF
+     *
+     * @param doc loaded source document
+     * @param importer PageImporter to export compact pages with, or null to
+     * split the pages out as extractPage() does
+     * @param pageNums page numbers in the source document, starting at 0
+     * @return contents of the PDF
+     * @throws IOException
+     */
+    private byte[] exportPages(PDDocument doc, PageImporter importer, List<Integer> pageNums) throws IOException {
+        try (OutputDocument document = new OutputDocument(doc, importer, pageNums.get(0))) {
+            for (int i = 1; i < pageNums.size(); i++) {
+                document.add(pageNums.get(i));
+            }
+            return document.save();
+        }
+    }
+
+    /**
+     * An output file of several pages, built up a page at a time, so that
+     * grouped pages are streamed into it as they are reached rather than the
+     * batch being held in memory; only the pages of the one document are kept
+     * open
+     */
+    private class OutputDocument implements Closeable {
+
+        private final PDDocument source;
+        private final PageImporter importer; // null to split the pages out as extractPage() does
+        private final PDDocument output;
+        private final List<PDDocument> split = new ArrayList<>(); // kept open until the output has been saved, as it shares their objects
+        private final int firstPage;
+        private int lastPage;
+        private int dropped; // pages dropped since the last page added, which the document covers only if another is added
+
+        OutputDocument(PDDocument s, PageImporter i, int pageNum) throws IOException {
+            this.source = s;
+            this.importer = i;
+            this.firstPage = pageNum;
+            this.lastPage = pageNum;
+            long start = System.nanoTime();
+            if (importer != null) {
+                this.output = new PDDocument(getStreamCache());
+                this.output.setVersion(s.getVersion());
+                this.output.addPage(importer.copyPage(s.getPage(pageNum)));
+            } else {
+                this.output = extractPage(s, pageNum); // so that a document of one page is saved just as exportPage() saves it
+            }
+            metrics.record(RunMetrics.Stage.SPLIT, start);
+        }
+
+        /**
+         * Adds another page of the source to the end of the document
+         *
+         * @param pageNum page number in the source document, starting at 0
+         * @throws IOException
+         */
+        void add(int pageNum) throws IOException {
+            long start = System.nanoTime();
+            if (importer != null) {
+                output.addPage(importer.copyPage(source.getPage(pageNum)));
+            } else {
+                PDDocument page = extractPage(source, pageNum);
+                split.add(page);
+                output.addPage(page.getPage(0));
+            }
+            metrics.record(RunMetrics.Stage.SPLIT, start);
+            lastPage = pageNum;
+            dropped = 0;
+        }
+
+        /**
+         * Notes a page dropped after the last one added, eg a blank page,
+         * which the document covers if another page is added after it
+         */
+        void drop() {
+            dropped++;
+        }
+
+        int getDropped() {
+            return dropped;
+        }
+
+        int getFirstPage() {
+            return firstPage;
+        }
+
+        int getLastPage() {
+            return lastPage;
+        }
+
+        /**
+         * @return contents of the PDF, with the document ID of its first page
+         * @throws IOException
+         */
+        byte[] save() throws IOException {
+            setDocumentId(output, getDocumentId(firstPage));
+            long start = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            output.save(out);
+            metrics.record(RunMetrics.Stage.SAVE, start);
+            return out.toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                output.close();
+            } finally {
+                for (PDDocument page : split) {
+                    page.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a grouped document once its last page has been added. If it
+     * shares its filename with an earlier document and they are being
+     * merged, the file is written again with the pages of both.
+     *
+     * @param worker worker the document was built by
+     * @param document finished document
+     * @param filename filename given to its first page
+     * @throws IOException
+     */
+    private void writeDocument(PageWorker worker, OutputDocument document, String filename) throws IOException {
+        List<Integer> pages = identifiers.getPages(filename);
+        byte[] pdf = pages.isEmpty() || pages.get(0) == document.getFirstPage() ? document.save() : worker.exportPages(pages);
+        writePages(document.getFirstPage(), document.getLastPage(), filename, pdf);
+        pagesWritten.addAndGet(document.getDropped()); // dropped after its last page, so there is nothing to write
+    }
+
+    /**
+     * Reports a page which couldn't be rendered or recognised with OCR; the
+     * page is left uninterpreted, so the run carries on and writes it as a
+     * failure
+     *
+     * @param pageNum page number in the source document, starting at 0
+     * @param ex why the page couldn't be recognised
+     * @throws IOException the same exception, if the thread was interrupted,
+     * as the run is being stopped rather than the page having failed
+     */
+    private void notRecognised(int pageNum, IOException ex) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw ex;
+        }
+        Logger.getLogger(PDFSplitter.class.getName()).log(Level.WARNING, "Could not recognise page " + (pageNum + 1) + ": " + ex.getLocalizedMessage(), ex);
+    }
+
+    /**
+     * @param page interpreted ComponentPage, with its contents
+     * @param profile the page's profile from the pre-scan, or null if there
+     * was none
+     * @return true if OCR is on and the page couldn't be interpreted because
+     * it has no text layer, and isn't known to be blank
+     */
+    private boolean needsRecognising(ComponentPage page, PageProfile profile) {
+        return recogniser != null && !page.isInterpreted() && !page.isOverBudget() && !page.hasText() && !page.isBlank()
+                && (profile == null || profile.getKind() != PageProfile.Kind.BLANK);
+    }
+
+    /**
+     * @param page interpreted ComponentPage
+     * @return true if the page is left out of the output for being blank or
+     * a separator sheet
+     */
+    private boolean isDropped(ComponentPage page) {
+        return blankPolicy != BlankPagePolicy.KEEP && (page.isBlank() || page.isSeparator());
+    }
+
+    private void recordDropped(ComponentPage page) {
+        metrics.recordDroppedPage(page.getPageNumber(), page.isSeparator() ? "separator" : "blank");
+    }
+
+    /**
+     * Classifies every page of the source from its content streams, which is
+     * much quicker than extracting their text
+     *
+     * @param doc loaded source document
+     * @return profile of each page
+     * @throws IOException if a page's content streams can't be read
+     */
+    private PageProfile[] scanPages(PDDocument doc) throws IOException {
+        PageClassifier classifier = new PageClassifier();
+        PageProfile[] profiles = new PageProfile[doc.getNumberOfPages()];
+        int pageNum = 0;
+        for (PDPage page : doc.getPages()) {
+            checkCancelled();
+            long start = System.nanoTime();
+            profiles[pageNum] = classifier.classify(page);
+            metrics.record(RunMetrics.Stage.SCAN, start);
+            metrics.recordPageKind(profiles[pageNum].getKind());
+            pageNum++;
+        }
+        return profiles;
+    }
+
+    /**
+     * Works out how many workers are worth using from the pre-scan, as each
+     * one loads its own view of the source: a short batch, or one that is
+     * mostly blank pages, gets fewer than have been configured
+     *
+     * @param profiles profile of each page
+     * @return number of workers to use, from 1 to the configured number
+     */
+    private int sizePool(PageProfile[] profiles) {
+        long work = 0;
+        for (PageProfile profile : profiles) {
+            work += PAGE_WORK;
+            if (profile.hasText()) {
+                work += profile.getTextLength();
+            } else if (recogniser != null && profile.getKind() == PageProfile.Kind.IMAGE_ONLY) {
+                work += RENDER_WORK;
+            }
+        }
+        return (int) Math.max(1, Math.min(this.workerCount, (work + WORKER_WORK - 1) / WORKER_WORK));
+    }
+
+    /**
+     * Decides whether a page carries on the grouped document before it: it
+     * does unless it matches the start of document term or has a different
+     * primary identifier. A page whose identifier couldn't be read carries on
+     * the document, as often only the front page of a report has one.
+     *
+     * @param identifier primary identifier of the document's first page, or
+     * null if it couldn't be read
+     * @param page interpreted ComponentPage
+     * @return true if the page belongs in the same document
+     */
+    private boolean continuesDocument(String identifier, ComponentPage page) {
+        if (page.isDocumentStart()) {
+            return false;
+        }
+        return !page.isInterpreted() || page.getIdentifier().equals(identifier);
+    }
+
+    /**
+     * Starts the metrics for a new run, publishing them over JMX if enabled
+     */
+    private void startMetrics() {
+        metrics = new RunMetrics(source.getName());
+        if (this.jmxEnabled) {
+            try {
+                metrics.registerMBean();
+            } catch (IOException ex) {
+                Logger.getLogger(PDFSplitter.class.getName()).log(Level.WARNING, ex.getLocalizedMessage(), ex); // the run itself is unaffected
+            }
+        }
+    }
+
+    /**
+     * Resets the progress counters for a new run, and publishes the first
+     * update
+     *
+     * @param totalPages number of pages in the source document
+     */
+    private void startProgress(int totalPages) {
+        pagesExtracted.set(0);
+        pagesInterpreted.set(0);
+        pagesWritten.set(0);
+        pagesRecognised.set(0);
+        synchronized (progressLock) {
+            progressTotal = totalPages;
+            progressStart = System.nanoTime();
+            lastProgress = progressStart;
+            lastDone = 0;
+            recentRate = -1;
+        }
+        publishProgress(true);
+    }
+
+    /**
+     * Publishes the progress of the run to the listener, if there is one and
+     * enough time has passed since the last update
+     *
+     * @param now true to publish whatever the time, eg at the start or end
+     */
+    private void publishProgress(boolean now) {
+        ProgressListener listener = this.progressListener;
+        if (listener == null) {
+            return;
+        }
+        long time = System.nanoTime();
+        synchronized (progressLock) {
+            if (!now && time - lastProgress < PROGRESS_INTERVAL_NANOS) {
+                return;
+            }
+            int written = pagesWritten.get();
+            int done = pagesInterpreted.get() + written; // each page is done once it has been both interpreted and written
+            if (time - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                double rate = (done - lastDone) / 2.0 / ((time - lastProgress) / 1e9);
+                recentRate = recentRate < 0 ? rate : 0.7 * recentRate + 0.3 * rate; // smoothed, so the figure doesn't jump about
+                lastDone = done;
+            }
+            lastProgress = time;
+            listener.progressed(new SplitProgress(progressTotal, pagesExtracted.get(), pagesInterpreted.get(), written,
+                    time - progressStart, Math.max(0, recentRate), now && written >= progressTotal)); // resumed pages count as written
+        }
+    }
+
+    /**
+     * Stops the run if it has been cancelled; called before each page
+     *
+     * @throws SplitCancelledException if cancel() has been called
+     */
+    private void checkCancelled() throws SplitCancelledException {
+        if (this.cancelled) {
+            throw new SplitCancelledException();
+        }
+    }
+
+    /**
+     * Closes the sink of a run, waiting for any pages still being written. If
+     * the run stopped part way, the archive being written is abandoned first,
+     * so that it isn't finished off as though it were complete.
+     *
+     * @param completed true if every page was handed to the sink
+     * @throws IOException if a write failed
+     */
+    private void closeSink(boolean completed) throws IOException {
+        if (!completed && archive != null) {
+            archive.abort();
+        }
+        sink.close();
+    }
+
+    /**
+     * Opens the checkpoint journal for a run, picking up the pages written by
+     * an earlier, interrupted run over the same source with the same settings
+     * if resuming is on
+     *
+     * @return journal for the run, or null if resuming is off
+     * @throws IOException
+     */
+    private CheckpointJournal openJournal() throws IOException {
+        resumedCount = 0;
+        if (!this.resume) {
+            Files.deleteIfExists(new File(this.destination, CheckpointJournal.JOURNAL_FILENAME).toPath());
+            return null;
+        }
+        if (this.archiveFormat != null) {
+            return null; // the archives are written from scratch each run, so there is nothing to resume
+        }
+        return new CheckpointJournal(openFileSink(), this.destination, this.source, describeNaming());
+    }
+
+    /**
+     * Describes the settings which decide the filename each page is written
+     * to, so that an interrupted run is only resumed with the same ones
+     *
+     * @return description of the search terms, prefix, suffix, separator and
+     * document start terms, and how pages are grouped, dropped and
+     * de-duplicated
+     */
+    private String describeNaming() {
+        StringBuilder naming = new StringBuilder();
+        for (SearchTerm term : this.searchTerms) {
+            naming.append(describe(term)).append('\n');
+        }
+        naming.append(this.prefix).append('\n').append(this.suffix).append('\n')
+                .append(describe(this.separatorTerm)).append('\n').append(describe(this.documentStartTerm)).append('\n')
+                .append(this.groupPages).append('\t').append(this.blankPolicy).append('\t').append(this.duplicateStrategy);
+        return naming.toString();
+    }
+
+    private static String describe(SearchTerm term) {
+        if (term == null) {
+            return "";
+        }
+        return term.getLabel() + "\t" + term.getRegex() + "\t" + term.getOutputGroup() + "\t" + SearchTerm.formatRegion(term.getRegion());
+    }
+
+    /**
+     * Skips a page that an earlier run has already written, accounting for it
+     * as though it had been written in this run
+     *
+     * @param pageNum page number in the source document, starting at 0
+     * @return true if the page was already written and should be skipped
+     * @throws DuplicateIdentifierException if the page's filename collides
+     * with an earlier page's and the duplicate strategy is FAIL
+     */
+    private boolean resumePage(int pageNum) throws DuplicateIdentifierException {
+        if (journal == null || !journal.isComplete(pageNum)) {
+            return false;
+        }
+        if (journal.getFilename(pageNum).startsWith(FAILURE_PREFIX)) {
+            numFailures++; // keeps the numbering of later failures the same as an uninterrupted run
+        } else if (groupPages && pageNum > 0 && journal.isComplete(pageNum - 1) && journal.getFilename(pageNum).equals(journal.getFilename(pageNum - 1))) {
+            identifiers.extend(pageNum, journal.getFilename(pageNum)); // the rest of a grouped document
+        } else {
+            identifiers.add(pageNum, journal.getFilename(pageNum)); // so later pages still collide with it
+        }
+        pageBytes.set(pageNum, journal.getLength(pageNum));
+        resumedCount++;
+        pagesExtracted.incrementAndGet();
+        pagesInterpreted.incrementAndGet();
+        pagesWritten.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes the checkpoint journal once every page has been written
+     *
+     * @throws IOException
+     */
+    private void finishJournal() throws IOException {
+        if (journal != null) {
+            journal.delete();
+            journal = null;
+        }
+    }
+
+    /**
+     * Passes the text of a page to the debug viewer, if one has been set
+     *
+     * @param text extracted text of the page
+     */
+    private void showText(String text) {
+        if (this.textViewer != null) {
+            this.textViewer.accept(text);
+        }
+    }
+
+    /**
+     * Picks a random page to show in the debug viewer, if debugging is on
+     *
+     * @param totalPages number of pages in the source document
+     * @return page number to display, or -1 if none is to be displayed
+     */
+    private int selectDisplayPage(int totalPages) {
+        if (this.showPDFAsText && totalPages > 0) {
+            return ThreadLocalRandom.current().nextInt(0, totalPages);
+        }
+        return -1;
+    }
+
+    /**
+     * Works out the destination filename for an interpreted page; pages that
+     * could not be interpreted are numbered in the order they are reached.
+     * Pages must be named in page order, as a page whose identifier has
+     * already been used is resolved by the duplicate strategy.
+     *
+     * @param page interpreted ComponentPage
+     * @return filename, without the destination directory
+     * @throws DuplicateIdentifierException if the identifier has already been
+     * used and the duplicate strategy is FAIL
+     */
+    private String getOutputFilename(ComponentPage page) throws DuplicateIdentifierException {
+        if (page.isInterpreted()) {
+            return identifiers.add(page.getPageNumber(), this.prefix + PDFBatchSplitter.DEFAULT_SEPARATOR + page.getCompleteIdentifier() + "." + this.suffix);
+        } else {
+            numFailures++;
+            String filename = FAILURE_PREFIX + numFailures + "." + this.suffix;
+            identifiers.addFailure(page.getPageNumber(), filename); // so that grouped pages can be added to it
+            return filename;
+        }
+    }
+
+    /**
+     * Saves a single ComponentPage to the destination, and closes its
+     * underlying PDDocument
+     *
+     * @param page interpreted ComponentPage
+     * @throws IOException
+     */
+    private void savePage(ComponentPage page) throws IOException {
+        try {
+            String filename = getOutputFilename(page);
+            List<Integer> merged = identifiers.getPages(filename);
+            if (merged.size() > 1) {
+                writePage(page.getPageNumber(), filename, exportPages(sourcePDF, null, merged)); // the source is still open
+                return;
             }
+            long start = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            page.getPdfPage().save(out);
+            metrics.record(RunMetrics.Stage.SAVE, start);
+            writePage(page.getPageNumber(), filename, out.toByteArray());
+        } finally {
+            page.getPdfPage().close();
         }
     }
 
     /**
-     * Writes a batch of PDF files
+     * Hands a saved page to the output sink, recording its size. Pages are
+     * saved to bytes on the thread that split them, as PDFBox documents are
+     * not thread safe.
      *
-     * @return true on success
-     * @throws java.io.IOException
+     * @param pageNum page number in the source document, starting at 0
+     * @param filename output filename
+     * @param pdf contents of the single-page PDF
+     * @throws IOException
      */
-    public boolean writeBatch() throws IOException {
-        boolean success = true;
-        int numFailures = 0;
-        for (ComponentPage page : pages) {
-            String filename;
-            if (page.isInterpreted()) {
-                filename = this.prefix + PDFBatchSplitter.DEFAULT_SEPARATOR + page.getCompleteIdentifier() + "." + this.suffix;
-            } else {
-                numFailures++;
-                filename = "AAA_FAILED_TO_READ_" + numFailures + "." + this.suffix;
-            }
-            File output = new File(this.destination.getAbsolutePath() + "/" + filename);
-            page.getPdfPage().save(output);
-            page.getPdfPage().close();
+    private void writePage(int pageNum, String filename, byte[] pdf) throws IOException {
+        writePages(pageNum, pageNum, filename, pdf);
+    }
+
+    /**
+     * Hands a saved file of consecutive pages (eg a grouped document) to the
+     * output sink, recording its size against its first page
+     *
+     * @param firstPage page number of the first page, starting at 0
+     * @param lastPage page number of the last page
+     * @param filename output filename
+     * @param pdf contents of the PDF
+     * @throws IOException
+     */
+    private void writePages(int firstPage, int lastPage, String filename, byte[] pdf) throws IOException {
+        long start = System.nanoTime();
+        sink.write(firstPage, lastPage, filename, pdf);
+        metrics.record(RunMetrics.Stage.WRITE, start);
+        pageBytes.addAndGet(firstPage, pdf.length);
+        metrics.recordPages(lastPage - firstPage + 1, pdf.length);
+        pagesWritten.addAndGet(lastPage - firstPage + 1);
+        publishProgress(false);
+    }
+
+    /**
+     * Creates the sink for the pages of a run: the destination directory,
+     * through the checkpoint journal if there is one, behind a pool of writer
+     * threads if any are configured
+     *
+     * @return new OutputSink; must be closed at the end of the run
+     * @throws IOException if the manifest of the destination can't be read
+     */
+    private OutputSink openSink() throws IOException {
+        OutputSink directory = journal != null ? journal : openFileSink(); // the journal writes through to the directory
+        if (this.writerThreads > 0) {
+            return new AsyncOutputSink(directory, this.writerThreads, this.writeQueueCapacity);
+        }
+        return directory;
+    }
+
+    /**
+     * Creates the sink that writes the files themselves: into archives named
+     * after the source when archive output is on, otherwise straight into the
+     * destination directory, or through its manifest when unchanged files
+     * are being skipped
+     *
+     * @return new OutputSink
+     * @throws IOException if the manifest of the destination can't be read,
+     * or the first archive can't be created
+     */
+    private OutputSink openFileSink() throws IOException {
+        manifest = null;
+        archive = null;
+        if (this.archiveFormat != null) {
+            String name = this.source.getName();
+            int dot = name.lastIndexOf('.');
+            archive = new ArchiveOutputSink(this.destination, dot > 0 ? name.substring(0, dot) : name, this.archiveFormat, this.archiveLevel, this.archivePages);
+            return archive;
+        }
+        OutputSink directory = new DirectoryOutputSink(this.destination);
+        if (this.skipUnchanged) {
+            manifest = new ManifestOutputSink(directory, this.destination);
+            return manifest;
+        }
+        return directory;
+    }
+
+    /**
+     * Works out the document ID for the output file of a page. PDFBox would
+     * otherwise give every file saved a new, random ID, so the same page
+     * would never be saved as the same bytes twice.
+     *
+     * @param pageNum page number in the source document, starting at 0
+     * @return 16-byte ID derived from the source and page number, or null if
+     * the source hasn't been hashed
+     * @throws IOException
+     */
+    private byte[] getDocumentId(int pageNum) throws IOException {
+        if (sourceHash == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("MD5").digest((sourceHash + "/" + pageNum).getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("MD5 is not available", ex);
+        }
+    }
+
+    /**
+     * Sets the ID in the trailer of a document about to be saved, which
+     * PDFBox keeps rather than generating a random one
+     *
+     * @param doc document to be saved
+     * @param id ID from getDocumentId(), or null to let PDFBox generate one
+     */
+    static void setDocumentId(PDDocument doc, byte[] id) {
+        if (id != null) {
+            COSArray ids = new COSArray();
+            ids.add(new COSString(id)); // the permanent and changing parts of the ID start out the same
+            ids.add(new COSString(id));
+            doc.getDocument().getTrailer().setItem(COSName.ID, ids);
         }
-        sourcePDF.close();
-        return success;
     }
 
     /**
@@ -211,11 +1626,491 @@ public class PDFSplitter {
         return isValid;
     }
 
+    /**
+     * Simple helper method to escape white space and other unsafe characters
+     * from a user-supplied prefix
+     *
+     * @param p User-entered prefix
+     * @return Cleansed prefix
+     */
+    public static String escapePrefix(String p) {
+        return p.replaceAll("[^A-Za-z0-9]", "");
+    }
+
+    /**
+     * Sets where the text of a page is sent when debugging is on; the
+     * splitter itself has no user interface
+     *
+     * @param textViewer receiver for the extracted text, eg
+     * MainWindow::updatePDFViewer
+     */
+    public void setTextViewer(Consumer<String> textViewer) {
+        this.textViewer = textViewer;
+    }
+
     public String getDestinationAsString() {
         return this.destination.getAbsolutePath();
     }
 
     public int getPageCount() {
-        return this.pages.size();
+        return this.pageCount;
+    }
+
+    /**
+     * @return number of pages written that could not be interpreted
+     */
+    public int getFailureCount() {
+        return this.numFailures;
+    }
+
+    public PageRecogniser getRecogniser() {
+        return recogniser;
+    }
+
+    /**
+     * Recognises pages with OCR that couldn't be interpreted because they
+     * have no text layer, eg scans. With more than one worker, rendering runs
+     * on the worker pool while the recogniser's own pool runs the OCR engine.
+     * Only applies to process(), processPages() and processParallel().
+     *
+     * @param recogniser PageRecogniser, or null to leave such pages
+     * uninterpreted
+     */
+    public void setRecogniser(PageRecogniser recogniser) {
+        this.recogniser = recogniser;
+    }
+
+    /**
+     * @return number of pages recognised with OCR in the last run
+     */
+    public int getRecognisedCount() {
+        return pagesRecognised.get();
+    }
+
+    public boolean isGroupPages() {
+        return groupPages;
+    }
+
+    /**
+     * Writes each run of pages with the same primary identifier as a single
+     * document, rather than a file per page. A new document also starts at
+     * any page matching the start of document term, if one is set. Pages
+     * are streamed into the open document, so only one document is held in
+     * memory at a time. Only applies to process(), processPages() and
+     * processParallel().
+     *
+     * @param groupPages true to group pages into documents
+     */
+    public void setGroupPages(boolean groupPages) {
+        this.groupPages = groupPages;
+    }
+
+    public SearchTerm getDocumentStartTerm() {
+        return documentStartTerm;
+    }
+
+    /**
+     * Sets a SearchTerm marking the first page of each document when pages
+     * are grouped, eg a title that only appears on the front page of each
+     * report; see PageInterpreter
+     *
+     * @param documentStartTerm start of document term, or null for none
+     */
+    public void setDocumentStartTerm(SearchTerm documentStartTerm) {
+        this.documentStartTerm = documentStartTerm;
+    }
+
+    public DuplicateStrategy getDuplicateStrategy() {
+        return duplicateStrategy;
+    }
+
+    /**
+     * Sets what to do when two pages resolve to the same output filename;
+     * every collision is listed in the run metrics whichever is chosen. The
+     * default is SUFFIX_COUNTER.
+     *
+     * @param duplicateStrategy strategy for duplicate identifiers
+     */
+    public void setDuplicateStrategy(DuplicateStrategy duplicateStrategy) {
+        checkArchiveOutput(this.archiveFormat, duplicateStrategy);
+        this.duplicateStrategy = duplicateStrategy;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * @return number of workers the last run used, which may be fewer than
+     * getWorkerCount() after a pre-scan
+     */
+    public int getWorkersUsed() {
+        return workersUsed;
+    }
+
+    public BlankPagePolicy getBlankPolicy() {
+        return blankPolicy;
+    }
+
+    /**
+     * Sets what process(), processPages() and processParallel() do with
+     * pages that couldn't be read because they are blank, or that match the
+     * separator term
+     *
+     * @param blankPolicy BlankPagePolicy; KEEP writes them as failures, as
+     * any other unreadable page is
+     */
+    public void setBlankPolicy(BlankPagePolicy blankPolicy) {
+        this.blankPolicy = blankPolicy;
+    }
+
+    public BlankPageDetector getBlankDetector() {
+        return blankDetector;
+    }
+
+    public void setBlankDetector(BlankPageDetector blankDetector) {
+        this.blankDetector = blankDetector;
+    }
+
+    public SearchTerm getSeparatorTerm() {
+        return separatorTerm;
+    }
+
+    /**
+     * Sets a SearchTerm marking the separator sheets between documents,
+     * which are dropped as blank pages are, unless blank pages are kept
+     *
+     * @param separatorTerm separator term, or null for none
+     */
+    public void setSeparatorTerm(SearchTerm separatorTerm) {
+        this.separatorTerm = separatorTerm;
+    }
+
+    public boolean isPreScan() {
+        return preScan;
+    }
+
+    /**
+     * Sets whether process(), processPages() and processParallel() classify
+     * the pages from their content streams before extracting any text. Pages
+     * with no text layer are then not extracted at all, blank pages are never
+     * sent for OCR, and the parallel engine uses only as many workers as the
+     * estimated work calls for.
+     *
+     * @param preScan true to pre-scan the pages
+     */
+    public void setPreScan(boolean preScan) {
+        this.preScan = preScan;
+    }
+
+    /**
+     * Sets the number of workers used by process(); values below 1 are
+     * treated as 1
+     *
+     * @param workerCount number of pages to process at once
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = Math.max(1, workerCount);
+    }
+
+    public int getMatchWindow() {
+        return matchWindow;
+    }
+
+    /**
+     * Limits each SearchTerm to the text within this many characters of its
+     * literal anchor (eg "Candidate Number"); see PageInterpreter
+     *
+     * @param matchWindow window size in characters, or 0 to search the whole
+     * page
+     */
+    public void setMatchWindow(int matchWindow) {
+        this.matchWindow = Math.max(0, matchWindow);
+    }
+
+    public long getMatchBudget() {
+        return matchBudget;
+    }
+
+    /**
+     * Limits the time spent matching the SearchTerms against any one page, so
+     * that a regex which backtracks badly on some page can't stall the batch.
+     * Pages that go over are written as failed to read, and listed in the run
+     * metrics; see PageInterpreter.
+     *
+     * @param matchBudget time budget per page in milliseconds, or 0 for no
+     * limit
+     */
+    public void setMatchBudget(long matchBudget) {
+        this.matchBudget = Math.max(0, matchBudget);
+    }
+
+    /**
+     * @return total bytes written in the last run
+     */
+    public long getBytesWritten() {
+        long total = 0;
+        for (int i = 0; i < pageBytes.length(); i++) {
+            total += pageBytes.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param pageNum page number in the source document, starting at 0
+     * @return bytes written for the page in the last run
+     */
+    public long getBytesWritten(int pageNum) {
+        return pageBytes.get(pageNum);
+    }
+
+    public PageTextCache getTextCache() {
+        return textCache;
+    }
+
+    /**
+     * Takes the text of each page from a cache of the text extracted by
+     * earlier runs over the same source, so that re-running with different
+     * SearchTerms only has to interpret and write the pages. The cache is
+     * owned, and closed, by the caller, and may be shared between splitters.
+     * Lazy extraction isn't used while caching.
+     *
+     * @param textCache open cache, or null to extract the text of every page
+     */
+    public void setTextCache(PageTextCache textCache) {
+        this.textCache = textCache;
+    }
+
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    /**
+     * Leaves output files alone when the page would be written with exactly
+     * the same contents, as recorded in the destination's manifest; see
+     * ManifestOutputSink. Useful when the destination is synced or backed up,
+     * where every rewrite costs.
+     *
+     * @param skipUnchanged true to skip unchanged files
+     */
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * @return number of files left as they were by the last run, as their
+     * contents had not changed
+     */
+    public int getUnchangedCount() {
+        return this.manifest == null ? 0 : this.manifest.getUnchangedCount();
+    }
+
+    /**
+     * @return timings and other figures for the current or last run
+     */
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Publishes the metrics of each run over JMX, where they stay until the
+     * next run of a source with the same name
+     *
+     * @param jmxEnabled true to publish the metrics
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    /**
+     * Sets who is told how the run is going: pages extracted, interpreted and
+     * written, throughput and time remaining
+     *
+     * @param progressListener listener, or null for none
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Asks the run to stop. It does so before starting on its next page (on
+     * every worker), closing the source and any pages in progress, and
+     * process() then throws a SplitCancelledException. The pages already
+     * written are kept in the checkpoint journal, so the run can be resumed.
+     * May be called from any thread; process() clears it, so it only stops
+     * the run in progress, not the next one.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * Sets whether a run carries on from the pages already written by an
+     * earlier, interrupted run over the same source; see CheckpointJournal.
+     * When off, any journal in the destination is discarded and every page
+     * is written again.
+     *
+     * @param resume true to resume interrupted runs
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @return number of pages of the last run that had already been written by
+     * an earlier, interrupted run
+     */
+    public int getResumedCount() {
+        return this.resumedCount;
+    }
+
+    public boolean isCompactOutput() {
+        return compactOutput;
+    }
+
+    /**
+     * Exports each page into a fresh, small document holding only the
+     * resources the page uses, rather than splitting out a copy of the
+     * source's document structure per page; see PageImporter
+     *
+     * @param compactOutput true for compact output
+     */
+    public void setCompactOutput(boolean compactOutput) {
+        this.compactOutput = compactOutput;
+    }
+
+    public MemoryPolicy getMemoryPolicy() {
+        return memoryPolicy;
+    }
+
+    /**
+     * Sets where PDFBox keeps the streams of the source document and of each
+     * output page
+     *
+     * @param memoryPolicy HEAP, MIXED or SCRATCH
+     * @param memoryLimit heap bytes allowed per document for HEAP or MIXED;
+     * -1 for no limit (HEAP only)
+     * @param scratchDirectory directory for temporary files used by MIXED and
+     * SCRATCH, or null for the system default
+     */
+    public void setMemoryPolicy(MemoryPolicy memoryPolicy, long memoryLimit, File scratchDirectory) {
+        this.memoryPolicy = memoryPolicy;
+        this.memoryLimit = memoryLimit;
+        this.scratchDirectory = scratchDirectory;
+    }
+
+    public ArchiveFormat getArchiveFormat() {
+        return archiveFormat;
+    }
+
+    /**
+     * Streams the output files of each run into archives in the destination
+     * directory, named after the source, rather than writing them as files of
+     * their own. Runs writing archives can't be resumed, and don't skip
+     * unchanged files. A run which fails or is cancelled leaves the archive it
+     * was writing with a ".partial" extension, without its end.
+     *
+     * @param archiveFormat format of the archives, or null to write the
+     * files straight into the destination directory
+     * @param archiveLevel compression level from 0 to 9, or -1 for the
+     * default
+     * @param archivePages pages after which to start a new archive, or 0 for
+     * a single archive per source
+     */
+    public void setArchiveOutput(ArchiveFormat archiveFormat, int archiveLevel, int archivePages) {
+        checkArchiveOutput(archiveFormat, this.duplicateStrategy);
+        this.archiveFormat = archiveFormat;
+        this.archiveLevel = archiveLevel;
+        this.archivePages = archivePages;
+    }
+
+    /**
+     * Merged duplicates are written again as each page is added to them, so
+     * an archive would hold every copy
+     *
+     * @throws IllegalArgumentException if the combination can't be written
+     */
+    private static void checkArchiveOutput(ArchiveFormat format, DuplicateStrategy strategy) {
+        if (format != null && strategy == DuplicateStrategy.MERGE) {
+            throw new IllegalArgumentException("Merged duplicates are written more than once, so can't be written to an archive");
+        }
+    }
+
+    /**
+     * @return archives written by the last run, in order; empty unless
+     * archive output is on; the last ends ".partial" if the run failed or was
+     * cancelled
+     */
+    public List<File> getArchives() {
+        return archive != null ? archive.getArchives() : Collections.<File>emptyList();
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Reads the source through a memory-mapped file, so that its bytes are
+     * paged in by the operating system rather than copied onto the heap.
+     * Sources over 2GB are always read through a buffer.
+     *
+     * @param memoryMapped true to memory-map the source
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    /**
+     * Moves writing pages to the destination onto its own pipeline stage;
+     * see AsyncOutputSink
+     *
+     * @param writerThreads number of writer threads, or 0 to write each page
+     * on the thread that split it
+     */
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = Math.max(0, writerThreads);
+    }
+
+    public int getWriteQueueCapacity() {
+        return writeQueueCapacity;
+    }
+
+    /**
+     * @param writeQueueCapacity number of split pages that may wait to be
+     * written before splitting is held up
+     */
+    public void setWriteQueueCapacity(int writeQueueCapacity) {
+        this.writeQueueCapacity = Math.max(1, writeQueueCapacity);
+    }
+
+    public boolean isLazyExtraction() {
+        return lazyExtraction;
+    }
+
+    /**
+     * Stops extracting the text of each page as soon as every SearchTerm,
+     * including the start of document and separator terms, has matched. The
+     * output is the same as without it; see IncrementalTextStripper
+     *
+     * @param lazyExtraction true to extract lazily
+     */
+    public void setLazyExtraction(boolean lazyExtraction) {
+        this.lazyExtraction = lazyExtraction;
     }
 }
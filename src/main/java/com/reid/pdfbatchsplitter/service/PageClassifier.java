@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.PageProfile;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import org.apache.pdfbox.contentstream.PDContentStream;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * Classifies pages from their content streams alone, as a cheap pre-scan
+ * before any text is extracted: the streams are tokenised, but no fonts are
+ * loaded and no glyphs are positioned, which is where PDFTextStripper spends
+ * its time. The operators that show text, draw images and paint paths are
+ * counted, following any forms the page draws.
+ *
+ * Not thread safe, as PDFBox documents are not; each thread should classify
+ * pages from its own document.
+ *
+ * @author pmreid
+ */
+public class PageClassifier {
+
+    private static final int MAX_FORM_DEPTH = 8; // forms nested deeper than this are not followed
+
+    /**
+     * Classifies a page
+     *
+     * @param page page to classify
+     * @return what the page holds
+     * @throws IOException if the page's content streams can't be read
+     */
+    public PageProfile classify(PDPage page) throws IOException {
+        Counts counts = new Counts();
+        scan(page, page.getResources(), counts, 0, Collections.newSetFromMap(new IdentityHashMap<>()));
+        long contentLength = 0;
+        Iterator<PDStream> contents = page.getContentStreams();
+        while (contents.hasNext()) {
+            contentLength += contents.next().getCOSObject().getLength();
+        }
+        PDRectangle box = page.getMediaBox();
+        return new PageProfile(counts.getKind(), counts.text, counts.images, contentLength, box.getWidth() * box.getHeight());
+    }
+
+    /**
+     * Tallies the operators of a page or form, and of the forms it draws
+     */
+    private void scan(PDContentStream stream, PDResources resources, Counts counts, int depth, Set<COSStream> seen) throws IOException {
+        PDFStreamParser parser = new PDFStreamParser(stream);
+        List<COSBase> operands = new ArrayList<>();
+        Object token;
+        while ((token = parser.parseNextToken()) != null) {
+            if (token instanceof COSBase) {
+                operands.add((COSBase) token);
+                continue;
+            }
+            String operator = ((Operator) token).getName();
+            switch (operator) {
+                case "Tj":
+                case "'":
+                case "\"":
+                    if (!operands.isEmpty() && operands.get(operands.size() - 1) instanceof COSString) {
+                        counts.text += ((COSString) operands.get(operands.size() - 1)).getBytes().length;
+                    }
+                    break;
+                case "TJ":
+                    if (!operands.isEmpty() && operands.get(0) instanceof COSArray) {
+                        for (COSBase element : (COSArray) operands.get(0)) {
+                            if (element instanceof COSString) {
+                                counts.text += ((COSString) element).getBytes().length;
+                            }
+                        }
+                    }
+                    break;
+                case "BI":
+                    counts.images++;
+                    break;
+                case "Do":
+                    if (!operands.isEmpty() && operands.get(0) instanceof COSName && resources != null) {
+                        drawXObject(resources.getXObject((COSName) operands.get(0)), resources, counts, depth, seen);
+                    }
+                    break;
+                case "S":
+                case "s":
+                case "f":
+                case "F":
+                case "f*":
+                case "B":
+                case "B*":
+                case "b":
+                case "b*":
+                case "sh":
+                    counts.paths++;
+                    break;
+                default:
+                    break;
+            }
+            operands.clear();
+        }
+    }
+
+    private void drawXObject(PDXObject xobject, PDResources resources, Counts counts, int depth, Set<COSStream> seen) throws IOException {
+        if (xobject instanceof PDImageXObject) {
+            counts.images++;
+        } else if (xobject instanceof PDFormXObject && depth < MAX_FORM_DEPTH && seen.add(xobject.getCOSObject())) {
+            PDFormXObject form = (PDFormXObject) xobject;
+            scan(form, form.getResources() != null ? form.getResources() : resources, counts, depth + 1, seen);
+        }
+    }
+
+    /**
+     * Running totals for a page
+     */
+    private static class Counts {
+
+        private int text;
+        private int images;
+        private int paths;
+
+        private PageProfile.Kind getKind() {
+            if (text > 0) {
+                return images > 0 ? PageProfile.Kind.MIXED : PageProfile.Kind.TEXT;
+            }
+            // vector paths with no text may be text drawn as outlines, so they are treated as images:
+            return images > 0 || paths > 0 ? PageProfile.Kind.IMAGE_ONLY : PageProfile.Kind.BLANK;
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.RandomAccessStreamCache.StreamCacheCreateFunction;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+/**
+ * Exports single pages of a source document as compact PDFs, as an
+ * alternative to splitting a new PDDocument out for every page.
+ *
+ * Each page is imported into a small output document of its own, and its
+ * resource dictionary is replaced with one holding only
+ * the fonts, images and other resources that its content stream actually
+ * names. Scanned batches often share a single resource dictionary across
+ * every page, so without this each output file would carry the images and
+ * fonts of the whole batch. A new output document is used for each page,
+ * rather than re-using one, so that a page is always saved as the same bytes
+ * whichever pages were exported before it.
+ *
+ * Not thread safe; each worker needs its own instance.
+ *
+ * @author pmreid
+ */
+public class PageImporter implements Closeable {
+
+    private static final COSName LINK = COSName.getPDFName("Link");
+
+    private final StreamCacheCreateFunction streamCache; // null for the PDFBox default
+
+    public PageImporter() {
+        this.streamCache = null;
+    }
+
+    /**
+     * @param streamCache decides where the output documents keep their
+     * streams
+     */
+    public PageImporter(StreamCacheCreateFunction streamCache) {
+        this.streamCache = streamCache;
+    }
+
+    /**
+     * Exports a single page of a loaded source document
+     *
+     * @param source loaded source document; must stay open until the export
+     * has returned
+     * @param pageNum page number in the source document, starting at 0
+     * @param documentId ID to save the page with, or null for one generated
+     * by PDFBox
+     * @return complete contents of a single-page PDF
+     * @throws IOException
+     */
+    public byte[] exportPage(PDDocument source, int pageNum, byte[] documentId) throws IOException {
+        return exportPages(source, Collections.singletonList(pageNum), documentId);
+    }
+
+    /**
+     * Exports several pages of a loaded source document as a single PDF, eg
+     * pages that share an identifier
+     *
+     * @param source loaded source document; must stay open until the export
+     * has returned
+     * @param pageNums page numbers in the source document, starting at 0, in
+     * the order they are to appear
+     * @param documentId ID to save the pages with, or null for one generated
+     * by PDFBox
+     * @return complete contents of the PDF
+     * @throws IOException
+     */
+    public byte[] exportPages(PDDocument source, List<Integer> pageNums, byte[] documentId) throws IOException {
+        try (PDDocument output = streamCache == null ? new PDDocument() : new PDDocument(streamCache)) {
+            output.setVersion(source.getVersion());
+            for (int pageNum : pageNums) {
+                output.addPage(copyPage(source.getPage(pageNum)));
+            }
+            PDFSplitter.setDocumentId(output, documentId);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            output.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Makes a standalone copy of a source page, with only the resources and
+     * annotations it needs
+     *
+     * @param page source page
+     * @return copy to add to an output document
+     */
+    PDPage copyPage(PDPage page) {
+        PDPage copy = new PDPage(new COSDictionary(page.getCOSObject())); // shallow copy, so the source page is left alone
+        copy.getCOSObject().removeItem(COSName.PARENT);
+        copy.getCOSObject().removeItem(COSName.B); // article beads refer to the rest of the source document
+        copy.getCOSObject().setItem(COSName.ANNOTS, copyAnnotations(page));
+        copy.setMediaBox(page.getMediaBox()); // inheritable attributes, which would otherwise be lost with the parent
+        copy.setCropBox(page.getCropBox());
+        copy.setRotation(page.getRotation());
+        if (page.getResources() != null) {
+            copy.setResources(new PDResources(pruneResources(page)));
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the annotations of a page which can stand alone, eg stamps and
+     * comments, leaving out links and form fields, and the references back to
+     * the source page and other annotations, all of which would drag the rest
+     * of the source document into the output
+     *
+     * @param page source page
+     * @return array of copied annotations, or null if there are none
+     */
+    private COSArray copyAnnotations(PDPage page) {
+        COSArray annots = page.getCOSObject().getCOSArray(COSName.ANNOTS);
+        if (annots == null) {
+            return null;
+        }
+        COSArray copies = new COSArray();
+        for (int i = 0; i < annots.size(); i++) {
+            COSBase annot = annots.getObject(i);
+            if (annot instanceof COSDictionary) {
+                COSName subtype = ((COSDictionary) annot).getCOSName(COSName.SUBTYPE);
+                if (!LINK.equals(subtype) && !COSName.WIDGET.equals(subtype) && !COSName.POPUP.equals(subtype)) {
+                    COSDictionary copy = new COSDictionary((COSDictionary) annot);
+                    copy.removeItem(COSName.P);
+                    copy.removeItem(COSName.POPUP);
+                    copy.removeItem(COSName.IRT);
+                    copy.removeItem(COSName.PARENT);
+                    copies.add(copy);
+                }
+            }
+        }
+        return copies.size() > 0 ? copies : null;
+    }
+
+    /**
+     * Builds a copy of a page's resource dictionary holding only the entries
+     * named in its content stream. Resources themselves are shared, not
+     * copied. If the content stream cannot be parsed, all of the resources
+     * are kept.
+     *
+     * @param page page whose resources are to be pruned
+     * @return new resource dictionary
+     */
+    private COSDictionary pruneResources(PDPage page) {
+        COSDictionary resources = page.getResources().getCOSObject();
+        Set<COSName> used = new HashSet<>();
+        boolean inlineImages = false;
+        try {
+            PDFStreamParser parser = new PDFStreamParser(page);
+            Object token;
+            while ((token = parser.parseNextToken()) != null) {
+                if (token instanceof COSName) {
+                    used.add((COSName) token);
+                } else if (token instanceof Operator && "BI".equals(((Operator) token).getName())) {
+                    inlineImages = true; // inline images may name colour spaces in their own parameters
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            return new COSDictionary(resources);
+        }
+
+        COSDictionary pruned = new COSDictionary();
+        for (COSName category : resources.keySet()) {
+            COSBase entries = resources.getDictionaryObject(category);
+            if (entries instanceof COSDictionary && !(inlineImages && COSName.COLORSPACE.equals(category))) {
+                COSDictionary kept = new COSDictionary();
+                for (COSName name : ((COSDictionary) entries).keySet()) {
+                    if (used.contains(name)) {
+                        kept.setItem(name, ((COSDictionary) entries).getItem(name)); // keeps indirect references as they are
+                    }
+                }
+                if (kept.size() > 0) {
+                    pruned.setItem(category, kept);
+                }
+            } else {
+                pruned.setItem(category, resources.getItem(category));
+            }
+        }
+        return pruned;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // nothing is held open between pages
+    }
+}
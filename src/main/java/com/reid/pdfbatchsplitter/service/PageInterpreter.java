@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.ComponentPage;
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Interprets the identifiers on ComponentPages using a List of SearchTerms.
+ * One Matcher is kept per SearchTerm and reset for each page, so nothing is
+ * compiled or allocated per page; as Matchers are not thread safe, each
+ * worker needs its own PageInterpreter.
+ *
+ * Before any regex is run, the page text is scanned once by an
+ * AnchorPrefilter for the literal text each SearchTerm requires (eg
+ * "Candidate Number"). Terms whose anchor is missing from the page are
+ * skipped, and if a match window is set, the others are only run over the
+ * text around each occurrence of their anchor.
+ *
+ * A time budget per page can be set to guard against regexes that backtrack
+ * catastrophically on some text: the terms are then run over a
+ * DeadlineCharSequence, and a page that goes over budget is left
+ * uninterpreted and flagged, rather than holding up the rest of the batch.
+ *
+ * @author pmreid
+ */
+public class PageInterpreter {
+
+    private final List<SearchTerm> searchTerms;
+    private final Matcher[] matchers;
+    private final int[] anchorOf; // index of each term's anchor in the prefilter, or -1 if it has none
+    private final AnchorPrefilter prefilter;
+    private final int matchWindow;
+    private RunMetrics metrics; // null unless the time taken by each term is recorded
+    private long budgetNanos; // time allowed for matching all the terms against a page, or 0 for no limit
+    private SearchTerm startTerm; // marks the first page of a document when pages are grouped; null if there is none
+    private Matcher startMatcher;
+    private SearchTerm separatorTerm; // marks a separator sheet between documents; null if there is none
+    private Matcher separatorMatcher;
+
+    public PageInterpreter(List<SearchTerm> t) {
+        this(t, 0);
+    }
+
+    /**
+     * @param t List of search terms; the first is the primary identifier
+     * @param w number of characters either side of an anchor to search for a
+     * match, or 0 to search the whole page. A window is faster on long pages,
+     * but misses identifiers further than w characters from their anchor.
+     */
+    public PageInterpreter(List<SearchTerm> t, int w) {
+        this.searchTerms = t;
+        this.matchWindow = w;
+        this.matchers = new Matcher[t.size()];
+        this.anchorOf = new int[t.size()];
+        List<String> anchors = new ArrayList<>();
+        Map<String, Integer> anchorIndex = new HashMap<>();
+        for (int i = 0; i < t.size(); i++) {
+            this.matchers[i] = t.get(i).getPattern().matcher("");
+            this.matchers[i].useTransparentBounds(true); // look-arounds can see outside a match window
+            this.matchers[i].useAnchoringBounds(false);
+            // terms restricted to a region search only a short piece of text, so are not worth prefiltering:
+            String anchor = t.get(i).getRegion() != null ? null : AnchorPrefilter.requiredLiteral(t.get(i).getRegex());
+            if (anchor == null) {
+                anchorOf[i] = -1;
+            } else {
+                if (!anchorIndex.containsKey(anchor)) {
+                    anchorIndex.put(anchor, anchors.size());
+                    anchors.add(anchor);
+                }
+                anchorOf[i] = anchorIndex.get(anchor);
+            }
+        }
+        this.prefilter = anchors.isEmpty() ? null : new AnchorPrefilter(anchors);
+    }
+
+    /**
+     * Interprets any identifiers that can be found in the text of a single
+     * ComponentPage, writing back to the page
+     *
+     * @param page ComponentPage with its text contents populated
+     */
+    public void interpret(ComponentPage page) {
+        if (prefilter != null) {
+            prefilter.scan(page.getPageContents()); // one pass over the page for every term's anchor
+        }
+        boolean primaryIdentifier = true; // the first element of the SearchTerm list is the primary identifier to use; all subsequent elements are merely 'additional' identifiers
+        long deadline = budgetNanos > 0 ? System.nanoTime() + budgetNanos : 0;
+        for (int i = 0; i < matchers.length; i++) {
+            String text = getText(page, searchTerms.get(i));
+            if (text == null) {
+                continue;
+            }
+            Matcher matcher = matchers[i].reset(deadline != 0 ? new DeadlineCharSequence(text, deadline) : text);
+            long start = metrics != null || deadline != 0 ? System.nanoTime() : 0;
+            boolean found;
+            try {
+                found = find(i, matcher, text.length());
+            } catch (DeadlineCharSequence.Expired ex) {
+                overBudget(page, searchTerms.get(i).getLabel(), System.nanoTime() - start);
+                break;
+            }
+            if (metrics != null) {
+                metrics.recordTerm(searchTerms.get(i).getLabel(), System.nanoTime() - start);
+            }
+            if (found) {
+                String identifier = matcher.group(searchTerms.get(i).getOutputGroup()).trim();
+                page.setInterpreted(true);
+                if (primaryIdentifier) {
+                    page.setIdentifier(identifier);
+                } else {
+                    page.appendIdentifier(identifier);
+                }
+                primaryIdentifier = false;
+            }
+        }
+        if (startMatcher != null && !page.isOverBudget()) {
+            page.setDocumentStart(findFlag(page, startTerm, startMatcher, deadline));
+        }
+        if (separatorMatcher != null && !page.isOverBudget()) {
+            page.setSeparator(findFlag(page, separatorTerm, separatorMatcher, deadline));
+        }
+        for (Matcher matcher : matchers) {
+            matcher.reset(""); // don't hold on to the page text
+        }
+    }
+
+    /**
+     * Matches a term that flags a page rather than adding to its
+     * identifiers, such as the start of document term
+     *
+     * @return true if the term matched the page in time
+     */
+    private boolean findFlag(ComponentPage page, SearchTerm term, Matcher matcher, long deadline) {
+        String text = getText(page, term);
+        if (text == null) {
+            return false;
+        }
+        matcher.reset(deadline != 0 ? new DeadlineCharSequence(text, deadline) : text);
+        long start = System.nanoTime();
+        boolean found = false;
+        try {
+            found = matcher.find();
+        } catch (DeadlineCharSequence.Expired ex) {
+            overBudget(page, term.getLabel(), System.nanoTime() - start);
+        }
+        matcher.reset("");
+        return found;
+    }
+
+    /**
+     * Sets a SearchTerm marking the first page of each document, eg a title
+     * that only appears on the front page of a report, for when pages are
+     * grouped into documents. Pages it matches are flagged with
+     * setDocumentStart(); it adds nothing to their identifiers.
+     *
+     * @param term start of document term, or null for none
+     */
+    public void setDocumentStartTerm(SearchTerm term) {
+        this.startTerm = term;
+        this.startMatcher = term == null ? null : term.getPattern().matcher("");
+    }
+
+    /**
+     * Sets a SearchTerm marking the separator sheets put between documents in
+     * a scanned batch, eg the text printed under a barcode. Pages it matches
+     * are flagged with setSeparator(); it adds nothing to their identifiers.
+     *
+     * @param term separator term, or null for none
+     */
+    public void setSeparatorTerm(SearchTerm term) {
+        this.separatorTerm = term;
+        this.separatorMatcher = term == null ? null : term.getPattern().matcher("");
+    }
+
+    /**
+     * Gives up on a page that has gone over the time budget: any identifiers
+     * already found are dropped, so it is named as a page that couldn't be
+     * read rather than after a partial identifier
+     */
+    private void overBudget(ComponentPage page, String label, long nanos) {
+        page.setInterpreted(false);
+        page.setIdentifier(null);
+        page.setAdditionalIdentifiers("");
+        page.setOverBudget(true);
+        if (metrics != null) {
+            metrics.recordTerm(label, nanos);
+            metrics.recordOverBudget(page.getPageNumber(), label);
+        }
+    }
+
+    /**
+     * Sets the time allowed for matching all the SearchTerms against a page.
+     * The clock is only checked every thousand or so characters the regexes
+     * read, so a page may run a little over before it is abandoned.
+     *
+     * @param millis time budget per page in milliseconds, or 0 for no limit
+     */
+    public void setTimeBudget(long millis) {
+        this.budgetNanos = millis * 1000000;
+    }
+
+    /**
+     * Records the time each SearchTerm takes to match against each page
+     *
+     * @param metrics metrics of the current run, or null to record nothing
+     */
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the text a SearchTerm should be matched against: the text of its
+     * region if it has one and it was extracted, otherwise the whole page
+     *
+     * @param page ComponentPage with its text contents populated
+     * @param term SearchTerm to be matched
+     * @return text to search, or null if none was extracted
+     */
+    private String getText(ComponentPage page, SearchTerm term) {
+        if (term.getRegion() != null) {
+            String regionText = page.getRegionContents(term.getRegion());
+            if (regionText != null) {
+                return regionText;
+            }
+        }
+        return page.getPageContents();
+    }
+
+    /**
+     * Runs the regex of a single term, using the prefilter's results to skip
+     * it or limit it to the windows around its anchor
+     *
+     * @param term index of the SearchTerm
+     * @param matcher the term's Matcher, reset to the page text
+     * @param length length of the page text
+     * @return true if the term matched, in which case the Matcher holds the
+     * match
+     */
+    private boolean find(int term, Matcher matcher, int length) {
+        int anchor = anchorOf[term];
+        if (anchor < 0) {
+            return matcher.find();
+        }
+        int hitCount = prefilter.getHitCount(anchor);
+        if (hitCount == 0) {
+            return false; // the regex can't match without its anchor
+        }
+        if (matchWindow <= 0) {
+            return matcher.find();
+        }
+        int anchorLength = prefilter.getAnchorLength(anchor);
+        int n = 0;
+        while (n < hitCount) {
+            int start = Math.max(0, prefilter.getHitStart(anchor, n) - matchWindow);
+            int end = Math.min(length, prefilter.getHitStart(anchor, n) + anchorLength + matchWindow);
+            while (n + 1 < hitCount && prefilter.getHitStart(anchor, n + 1) - matchWindow <= end) {
+                n++; // merge overlapping windows
+                end = Math.min(length, prefilter.getHitStart(anchor, n) + anchorLength + matchWindow);
+            }
+            matcher.region(start, end);
+            if (matcher.find()) {
+                return true;
+            }
+            n++;
+        }
+        return false;
+    }
+}
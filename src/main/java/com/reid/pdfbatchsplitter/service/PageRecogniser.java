@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+/**
+ * Recognises the text of pages with no text layer, eg scans, as a fallback
+ * for pages that couldn't otherwise be interpreted: each page is rendered at
+ * a set resolution, optionally cropped to the region holding the identifiers,
+ * and handed to an OcrEngine.
+ *
+ * OCR is slow, so results are kept in a PageTextCache under a hash of the
+ * page's content and images, rather than of the source file, so a page is
+ * never recognised twice even when it turns up again in another batch.
+ *
+ * Thread safe, as long as each thread renders from its own document.
+ *
+ * @author pmreid
+ */
+public class PageRecogniser {
+
+    private static final int BUFFER_SIZE = 65536;
+    private final OcrEngine engine;
+    private final int dpi;
+    private final Rectangle2D region; // part of the page to recognise, in points from the top-left corner; null for the whole page
+    private final PageTextCache cache; // null to recognise every page
+    private int threads = Runtime.getRuntime().availableProcessors(); // OCR engine calls to run at once
+    private int maxInFlight = 2 * Runtime.getRuntime().availableProcessors(); // rendered images waiting for, or being, recognised
+
+    /**
+     * @param e OCR engine
+     * @param d resolution to render at, in dots per inch; 300 suits most
+     * engines
+     * @param r part of the page to recognise, in points from the top-left
+     * corner, or null for the whole page
+     * @param c cache for the recognised text, or null for none
+     */
+    public PageRecogniser(OcrEngine e, int d, Rectangle2D r, PageTextCache c) {
+        this.engine = e;
+        this.dpi = d;
+        this.region = r;
+        this.cache = c;
+    }
+
+    /**
+     * Recognises the text of a page, from the cache if it has been seen
+     * before
+     *
+     * @param doc loaded document
+     * @param pageNum page number in the document, starting at 0
+     * @return recognised text
+     * @throws IOException if the page can't be rendered or recognised
+     */
+    public String recognise(PDDocument doc, int pageNum) throws IOException {
+        String key = getCacheKey(doc.getPage(pageNum));
+        String text = getCached(key);
+        if (text == null) {
+            text = recognise(render(doc, pageNum), key);
+        }
+        return text;
+    }
+
+    /**
+     * Works out the key a page's text is cached under: a hash of its content
+     * streams and of the images and forms they draw, along with the settings
+     * that affect the result
+     *
+     * @param page page to be recognised
+     * @return cache key
+     * @throws IOException if the page's streams can't be read
+     */
+    public String getCacheKey(PDPage page) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not available", ex);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Iterator<PDStream> contents = page.getContentStreams();
+        while (contents.hasNext()) {
+            digest(contents.next().getCOSObject(), digest, buffer);
+        }
+        if (page.getResources() != null) {
+            digestXObjects(page.getResources().getCOSObject(), digest, buffer, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        StringBuilder key = new StringBuilder("ocr/");
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        key.append('/').append(engine.getName()).append('/').append(dpi);
+        if (region != null) {
+            key.append('/').append(SearchTerm.formatRegion(region));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Adds the raw streams of the images and forms named by a resource
+     * dictionary to a digest, and those of any forms within them
+     */
+    private void digestXObjects(COSDictionary resources, MessageDigest digest, byte[] buffer, Set<COSStream> seen) throws IOException {
+        COSDictionary xobjects = resources.getCOSDictionary(COSName.XOBJECT);
+        if (xobjects == null) {
+            return;
+        }
+        for (COSName name : xobjects.keySet()) {
+            COSBase xobject = xobjects.getDictionaryObject(name);
+            if (xobject instanceof COSStream && seen.add((COSStream) xobject)) {
+                digest.update(name.getName().getBytes(StandardCharsets.UTF_8));
+                digest((COSStream) xobject, digest, buffer);
+                COSDictionary formResources = ((COSStream) xobject).getCOSDictionary(COSName.RESOURCES);
+                if (formResources != null) {
+                    digestXObjects(formResources, digest, buffer, seen);
+                }
+            }
+        }
+    }
+
+    private static void digest(COSStream stream, MessageDigest digest, byte[] buffer) throws IOException {
+        try (InputStream in = stream.createRawInputStream()) { // undecoded, which is quicker and just as distinctive
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * @param key key from getCacheKey()
+     * @return text recognised earlier, or null if there is none
+     * @throws IOException if the cache can't be read
+     */
+    public String getCached(String key) throws IOException {
+        return cache == null ? null : cache.get(key);
+    }
+
+    /**
+     * Renders a page, or its region, in greyscale for the OCR engine
+     *
+     * @param doc loaded document, which must not be in use by another thread
+     * @param pageNum page number in the document, starting at 0
+     * @return rendered image
+     * @throws IOException if the page can't be rendered
+     */
+    public BufferedImage render(PDDocument doc, int pageNum) throws IOException {
+        BufferedImage image = new PDFRenderer(doc).renderImageWithDPI(pageNum, dpi, ImageType.GRAY);
+        if (region == null) {
+            return image;
+        }
+        double scale = dpi / 72.0; // regions are in points
+        int x = (int) Math.max(0, Math.floor(region.getX() * scale));
+        int y = (int) Math.max(0, Math.floor(region.getY() * scale));
+        int width = (int) Math.min(image.getWidth() - x, Math.ceil(region.getWidth() * scale));
+        int height = (int) Math.min(image.getHeight() - y, Math.ceil(region.getHeight() * scale));
+        if (width <= 0 || height <= 0) {
+            throw new IOException("The OCR region is outside page " + (pageNum + 1));
+        }
+        return image.getSubimage(x, y, width, height);
+    }
+
+    /**
+     * Runs the OCR engine on a rendered page and caches the result
+     *
+     * @param image image from render()
+     * @param key key from getCacheKey()
+     * @return recognised text
+     * @throws IOException if the engine fails
+     */
+    public String recognise(BufferedImage image, String key) throws IOException {
+        String text = engine.recognise(image, dpi);
+        if (cache != null) {
+            cache.put(key, text);
+        }
+        return text;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads number of pages to run the OCR engine on at once
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Limits the rendered images held in memory at once, waiting for or
+     * being recognised; rendering is held up while the limit is reached
+     *
+     * @param maxInFlight maximum number of images
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * On-disk cache of the text extracted from source pages, so that re-running
+ * the same source (eg after changing a SearchTerm) only has to interpret and
+ * write the pages, not extract their text again. Entries are keyed by a hash
+ * of the source file's contents and the page number (and region, for text
+ * extracted from a region of the page).
+ *
+ * Everything is kept in a single file: each entry is appended as a record
+ * holding its key and deflated text, and an in-memory index of where each
+ * entry lies is rebuilt by skimming the record headers when the cache is
+ * opened. Reading an entry appends a small "touch" record, so that the least
+ * recently used order survives between runs; once the cache is over its size
+ * limit, the least recently used entries are dropped, and the file is
+ * rewritten without them once enough of it is dead space.
+ *
+ * Thread safe, so one instance can be shared by all the workers of a run, or
+ * by several runs at once. Only one process can have the cache open.
+ *
+ * @author pmreid
+ */
+public class PageTextCache implements Closeable {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final String CACHE_FILENAME = "text-cache.dat";
+    private static final int MAGIC = 0x50425443; // "PBTC"
+    private static final byte PUT = 'P';
+    private static final byte TOUCH = 'T';
+    private final File cacheFile;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(1024, 0.75f, true); // in least recently used order
+    private RandomAccessFile file;
+    private FileLock lock;
+    private long liveBytes; // compressed bytes of the entries in the index
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Where one entry's compressed text lies in the cache file
+     */
+    private static class Entry {
+
+        private final long offset;
+        private final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Opens the cache in a directory, creating it if necessary
+     *
+     * @param directory directory holding the cache file
+     * @param maxBytes limit on the compressed size of the cached text
+     * @throws IOException if the cache can't be opened, or is already open in
+     * another process
+     */
+    public PageTextCache(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the text cache directory " + directory);
+        }
+        this.cacheFile = new File(directory, CACHE_FILENAME);
+        this.maxBytes = maxBytes;
+        this.file = new RandomAccessFile(this.cacheFile, "rw");
+        this.lock = this.file.getChannel().tryLock();
+        if (this.lock == null) {
+            this.file.close();
+            throw new IOException("The text cache " + directory + " is in use by another process");
+        }
+        if (this.file.length() == 0) {
+            this.file.writeInt(MAGIC);
+        } else {
+            load();
+        }
+        evict();
+    }
+
+    /**
+     * @return the default cache directory, in the user's home directory
+     */
+    public static File getDefaultDirectory() {
+        return new File(System.getProperty("user.home"), ".pdfbatchsplitter" + File.separator + "text-cache");
+    }
+
+    /**
+     * Rebuilds the index from the record headers of the cache file. A record
+     * left half written by a crash is cut off, and a file that isn't a cache
+     * is started again.
+     *
+     * @throws IOException
+     */
+    private void load() throws IOException {
+        long end = 4;
+        long fileLength = this.file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.cacheFile)))) {
+            if (in.readInt() != MAGIC) {
+                end = 0;
+            } else {
+                while (true) {
+                    byte type = in.readByte();
+                    String key = readKey(in);
+                    long position = end + 1 + 2 + key.getBytes(StandardCharsets.UTF_8).length;
+                    if (type == PUT) {
+                        int length = in.readInt();
+                        if (length < 0 || position + 4 + length > fileLength) {
+                            break; // the last record was not finished
+                        }
+                        skipFully(in, length);
+                        put(key, new Entry(position + 4, length));
+                        position += 4 + length;
+                    } else if (type == TOUCH) {
+                        this.index.get(key); // moves the entry to the most recently used end
+                    } else {
+                        break; // damaged from here on
+                    }
+                    end = position;
+                }
+            }
+        } catch (EOFException ex) {
+            // the last record was not finished
+        }
+        this.file.setLength(end);
+        if (end == 0) {
+            this.file.seek(0);
+            this.file.writeInt(MAGIC);
+        }
+    }
+
+    /**
+     * Looks up the cached text for a key
+     *
+     * @param key cache key, eg from getKey()
+     * @return cached text, or null if none is cached
+     * @throws IOException
+     */
+    public String get(String key) throws IOException {
+        byte[] compressed;
+        synchronized (this) {
+            Entry entry = this.index.get(key);
+            if (entry == null) {
+                this.misses.incrementAndGet();
+                return null;
+            }
+            compressed = new byte[entry.length];
+            this.file.seek(entry.offset);
+            this.file.readFully(compressed);
+            append(TOUCH, key, null);
+        }
+        this.hits.incrementAndGet();
+        return inflate(compressed);
+    }
+
+    /**
+     * Adds text to the cache, replacing any already cached for the key and
+     * evicting the least recently used entries if the cache is then too big
+     *
+     * @param key cache key, eg from getKey()
+     * @param text text to cache
+     * @throws IOException
+     */
+    public void put(String key, String text) throws IOException {
+        byte[] compressed = deflate(text); // done outside the lock
+        synchronized (this) {
+            long offset = append(PUT, key, compressed);
+            put(key, new Entry(offset, compressed.length));
+            evict();
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        Entry old = this.index.put(key, entry);
+        if (old != null) {
+            this.liveBytes -= old.length;
+        }
+        this.liveBytes += entry.length;
+    }
+
+    /**
+     * Drops the least recently used entries until the cache is within its
+     * limit, then compacts the file if most of it is no longer used
+     *
+     * @throws IOException
+     */
+    private void evict() throws IOException {
+        Iterator<Entry> oldest = this.index.values().iterator();
+        while (this.liveBytes > this.maxBytes && oldest.hasNext()) {
+            this.liveBytes -= oldest.next().length;
+            oldest.remove();
+        }
+        if (this.file.length() > 2 * this.liveBytes + 1024 * 1024) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the cache file holding only the live entries, in least
+     * recently used order
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        File compacted = new File(this.cacheFile.getParentFile(), CACHE_FILENAME + ".tmp");
+        LinkedHashMap<String, Entry> moved = new LinkedHashMap<>(1024, 0.75f, true);
+        try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            for (Map.Entry<String, Entry> entry : this.index.entrySet()) {
+                byte[] compressed = new byte[entry.getValue().length];
+                this.file.seek(entry.getValue().offset);
+                this.file.readFully(compressed);
+                out.write(record(PUT, entry.getKey(), compressed));
+                moved.put(entry.getKey(), new Entry(out.length() - compressed.length, compressed.length));
+            }
+        }
+        this.lock.release();
+        this.file.close();
+        Files.move(compacted.toPath(), this.cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        this.file = new RandomAccessFile(this.cacheFile, "rw");
+        this.lock = this.file.getChannel().lock();
+        this.index.clear();
+        this.index.putAll(moved);
+    }
+
+    /**
+     * Appends a record to the end of the cache file
+     *
+     * @return offset of the record's data in the file
+     * @throws IOException
+     */
+    private long append(byte type, String key, byte[] data) throws IOException {
+        byte[] record = record(type, key, data);
+        long start = this.file.length();
+        this.file.seek(start);
+        this.file.write(record);
+        return start + record.length - (data == null ? 0 : data.length);
+    }
+
+    private static byte[] record(byte type, String key, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(type);
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        if (data != null) {
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String readKey(DataInputStream in) throws IOException {
+        byte[] keyBytes = new byte[in.readUnsignedShort()];
+        in.readFully(keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            int n = in.skipBytes(length - skipped);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            skipped += n;
+        }
+    }
+
+    private static byte[] deflate(String text) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IOException("A text cache entry is damaged");
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException ex) {
+            throw new IOException("A text cache entry is damaged", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Works out the cache key for the text of a page, or of a region of it
+     *
+     * @param sourceHash hash of the source file, from hash()
+     * @param pageNum page number in the source document, starting at 0
+     * @param region region of the page as formatted by
+     * SearchTerm.formatRegion(), or null for the full text
+     * @return cache key
+     */
+    public static String getKey(String sourceHash, int pageNum, String region) {
+        return region == null ? sourceHash + "/" + pageNum : sourceHash + "/" + pageNum + "/" + region;
+    }
+
+    /**
+     * Hashes the contents of a source file, so that a changed source never
+     * picks up the text of the old one
+     *
+     * @param source source PDF file
+     * @return SHA-256 of the file, in hex
+     * @throws IOException
+     */
+    public static String hash(File source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-256 is not available", ex);
+        }
+        try (InputStream in = new FileInputStream(source)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return number of lookups that found cached text since the cache was
+     * opened
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return number of lookups that found nothing cached since the cache was
+     * opened
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.lock.release();
+        } finally {
+            this.file.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.ComponentPage;
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.PDFTextStripperByArea;
+
+/**
+ * Extracts only as much text from a page as the SearchTerms need: the text of
+ * each region declared by a SearchTerm, and the full text of the page only
+ * if some SearchTerm has no region. In lazy mode the full text is only
+ * extracted up to the point where every SearchTerm has matched. With a
+ * PageTextCache, text already extracted from the same source by an earlier
+ * run is taken from the cache instead. Not thread
+ * safe, as the underlying text strippers are not; each worker needs its own
+ * instance.
+ *
+ * @author pmreid
+ */
+public class PageTextExtractor {
+
+    private final PDFTextStripper reader;
+    private final IncrementalTextStripper lazyReader; // null unless extraction is lazy
+    private final PDFTextStripperByArea areaReader;
+    private final List<Rectangle2D> regions = new ArrayList<>();
+    private final boolean fullTextNeeded;
+    private PageTextCache cache; // null unless text is cached between runs
+    private String sourceHash; // identifies the source document in the cache
+
+    public PageTextExtractor(List<SearchTerm> t) throws IOException {
+        this(t, false);
+    }
+
+    /**
+     * @param t List of search terms the text is extracted for
+     * @param lazy true to stop extracting the full text of a page as soon as
+     * every SearchTerm has matched; see IncrementalTextStripper
+     * @throws IOException
+     */
+    public PageTextExtractor(List<SearchTerm> t, boolean lazy) throws IOException {
+        boolean full = false;
+        for (SearchTerm term : t) {
+            if (term.getRegion() == null) {
+                full = true;
+            } else if (!regions.contains(term.getRegion())) {
+                regions.add(term.getRegion());
+            }
+        }
+        this.fullTextNeeded = full;
+        this.reader = new PDFTextStripper();
+        this.lazyReader = lazy && full ? new IncrementalTextStripper(t) : null;
+        if (regions.isEmpty()) {
+            this.areaReader = null;
+        } else {
+            this.areaReader = new PDFTextStripperByArea();
+            for (int i = 0; i < regions.size(); i++) {
+                this.areaReader.addRegion(String.valueOf(i), regions.get(i));
+            }
+        }
+    }
+
+    /**
+     * Extracts the text of a single page of a loaded document into a new
+     * ComponentPage
+     *
+     * @param doc loaded source document
+     * @param pageNum page number in the source document, starting at 0
+     * @param fullText true to extract all of the full text of the page even if
+     * no SearchTerm needs it, eg for display
+     * @return ComponentPage without a PDDocument, holding the extracted text
+     * @throws IOException
+     */
+    public ComponentPage extract(PDDocument doc, int pageNum, boolean fullText) throws IOException {
+        if (cache != null) {
+            return extractCached(doc, pageNum, fullText);
+        }
+        String contents = null;
+        if (lazyReader != null && !fullText) {
+            contents = lazyReader.getPageText(doc, pageNum);
+        } else if (fullTextNeeded || fullText) {
+            reader.setStartPage(pageNum + 1);
+            reader.setEndPage(pageNum + 1);
+            contents = reader.getText(doc);
+        }
+        ComponentPage page = new ComponentPage(null, contents, pageNum);
+        if (areaReader != null) {
+            areaReader.extractRegions(doc.getPage(pageNum));
+            for (int i = 0; i < regions.size(); i++) {
+                page.setRegionContents(regions.get(i), areaReader.getTextForRegion(String.valueOf(i)));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Extracts a page as extract() does, taking the text from the cache where
+     * it can and caching whatever has to be extracted. Lazy extraction isn't
+     * used, as only complete text can be cached.
+     */
+    private ComponentPage extractCached(PDDocument doc, int pageNum, boolean fullText) throws IOException {
+        String contents = null;
+        if (fullTextNeeded || fullText) {
+            String key = PageTextCache.getKey(sourceHash, pageNum, null);
+            contents = cache.get(key);
+            if (contents == null) {
+                reader.setStartPage(pageNum + 1);
+                reader.setEndPage(pageNum + 1);
+                contents = reader.getText(doc);
+                cache.put(key, contents);
+            }
+        }
+        ComponentPage page = new ComponentPage(null, contents, pageNum);
+        boolean extracted = false;
+        for (int i = 0; i < regions.size(); i++) {
+            String key = PageTextCache.getKey(sourceHash, pageNum, SearchTerm.formatRegion(regions.get(i)));
+            String text = cache.get(key);
+            if (text == null) {
+                if (!extracted) {
+                    areaReader.extractRegions(doc.getPage(pageNum));
+                    extracted = true;
+                }
+                text = areaReader.getTextForRegion(String.valueOf(i));
+                cache.put(key, text);
+            }
+            page.setRegionContents(regions.get(i), text);
+        }
+        return page;
+    }
+
+    /**
+     * Takes page text from, and adds it to, a cache shared between runs
+     *
+     * @param cache open PageTextCache, or null to extract every page
+     * @param sourceHash hash of the source document, from PageTextCache.hash()
+     */
+    public void setCache(PageTextCache cache, String sourceHash) {
+        this.cache = cache;
+        this.sourceHash = sourceHash;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.SplitProgress;
+
+/**
+ * Receives progress updates from a PDFSplitter. Updates are published at
+ * most a few times a second, plus once at the start and once at the end of
+ * the run, and may come from any of the splitter's worker threads, so a
+ * listener updating a user interface must hand them to its own thread (eg
+ * with SwingUtilities.invokeLater).
+ *
+ * @author pmreid
+ */
+public interface ProgressListener {
+
+    /**
+     * @param progress snapshot of the progress of the run
+     */
+    void progressed(SplitProgress progress);
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.PageProfile;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timings and other figures for a single run of a PDFSplitter: a latency
+ * histogram per page for each stage of the work and for each SearchTerm,
+ * the number of pages and bytes written, throughput, the heap high-water
+ * mark, any pages whose matching ran over the regex time budget and any
+ * pages that collided with an earlier page's identifier. Recording is thread
+ * safe and cheap enough to be left on all the time. The figures can be
+ * written out as a JSON report, appended as a row of a CSV file to track
+ * runs over time, or watched live over JMX.
+ *
+ * @author pmreid
+ */
+public class RunMetrics implements RunMetricsMXBean {
+
+    /**
+     * The stages each page goes through
+     */
+    public enum Stage {
+        /**
+         * classifying a page from its content streams before extraction
+         */
+        SCAN,
+        /**
+         * loading the source document (once per worker, rather than per page)
+         */
+        LOAD,
+        /**
+         * splitting a page out into its own document; in compact mode,
+         * importing and saving it, which is then not counted under SAVE
+         */
+        SPLIT,
+        /**
+         * extracting the text of a page
+         */
+        EXTRACT,
+        /**
+         * matching all the SearchTerms against a page
+         */
+        MATCH,
+        /**
+         * deciding whether a page with no text is blank, including any
+         * render of it
+         */
+        DETECT,
+        /**
+         * rendering and recognising a page with no text layer using OCR
+         */
+        OCR,
+        /**
+         * saving a page's document to bytes
+         */
+        SAVE,
+        /**
+         * handing a saved page to the destination; with writer threads, the
+         * time spent waiting for room in their queues
+         */
+        WRITE
+    }
+
+    private static final String JMX_DOMAIN = "com.reid.pdfbatchsplitter";
+    private static final int MAX_REGISTERED = 16; // sources whose last run stays registered over JMX, the oldest being dropped first
+    private static final Set<ObjectName> registered = new LinkedHashSet<>(); // in the order registered; guarded by RunMetrics.class
+    private final String source;
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final Map<String, LatencyHistogram> terms = new ConcurrentHashMap<>(); // by SearchTerm label
+    private final AtomicInteger pages = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong heapHighWaterMark = new AtomicLong();
+    private final List<Collision> collisions = Collections.synchronizedList(new ArrayList<>());
+    private final Map<PageProfile.Kind, AtomicInteger> pageKinds = new EnumMap<>(PageProfile.Kind.class); // pages of each kind found by a pre-scan
+    private final Map<Integer, String> overBudget = new ConcurrentSkipListMap<>(); // label of the SearchTerm that ran out of time, by page number
+    private final Map<Integer, String> dropped = new ConcurrentSkipListMap<>(); // why each page was left out of the output, by page number
+    private final long started = System.nanoTime();
+    private volatile long finished; // 0 until the run has finished
+
+    public RunMetrics(String s) {
+        this.source = s;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+        for (PageProfile.Kind kind : PageProfile.Kind.values()) {
+            pageKinds.put(kind, new AtomicInteger());
+        }
+    }
+
+    /**
+     * Records how long a stage took for one page
+     *
+     * @param stage stage of the work
+     * @param startNanos System.nanoTime() when the stage started
+     */
+    public void record(Stage stage, long startNanos) {
+        stages.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records how long one SearchTerm took to match against a page
+     *
+     * @param label label of the SearchTerm
+     * @param nanos time taken, in nanoseconds
+     */
+    public void recordTerm(String label, long nanos) {
+        LatencyHistogram histogram = terms.get(label);
+        if (histogram == null) {
+            histogram = terms.computeIfAbsent(label, l -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Records a page whose matching was abandoned for going over the regex
+     * time budget
+     *
+     * @param pageNumber page number in the source, from 0
+     * @param label label of the SearchTerm being matched when time ran out
+     */
+    public void recordOverBudget(int pageNumber, String label) {
+        overBudget.put(pageNumber, label);
+    }
+
+    /**
+     * Records a page left out of the output, eg for being blank
+     *
+     * @param pageNumber page number in the source, from 0
+     * @param reason why the page was left out, eg "blank"
+     */
+    public void recordDroppedPage(int pageNumber, String reason) {
+        dropped.put(pageNumber, reason);
+    }
+
+    /**
+     * Records the kind of a page found by a pre-scan
+     *
+     * @param kind kind of the page
+     */
+    public void recordPageKind(PageProfile.Kind kind) {
+        pageKinds.get(kind).incrementAndGet();
+    }
+
+    /**
+     * Records a page that resolved to the same output filename as an earlier
+     * one
+     *
+     * @param filename filename both pages resolved to
+     * @param firstPage page number of the earlier page, from 0
+     * @param pageNumber page number of the later page, from 0
+     * @param writtenAs filename the later page was written to, or null if it
+     * wasn't written
+     */
+    public void recordCollision(String filename, int firstPage, int pageNumber, String writtenAs) {
+        collisions.add(new Collision(filename, firstPage, pageNumber, writtenAs));
+    }
+
+    /**
+     * Records a page written to the destination, and samples the heap
+     *
+     * @param length bytes written for the page
+     */
+    public void recordPage(long length) {
+        recordPages(1, length);
+    }
+
+    /**
+     * Records a file of one or more pages written to the destination, and
+     * samples the heap
+     *
+     * @param count number of pages in the file
+     * @param length bytes written for the file
+     */
+    public void recordPages(int count, long length) {
+        pages.addAndGet(count);
+        bytes.addAndGet(length);
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long seen;
+        while (used > (seen = heapHighWaterMark.get()) && !heapHighWaterMark.compareAndSet(seen, used)) {
+            // another thread recorded a higher mark first; try again
+        }
+    }
+
+    /**
+     * Marks the end of the run, which fixes the elapsed time
+     */
+    public void finish() {
+        finished = System.nanoTime();
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @return histogram for each SearchTerm label
+     */
+    public Map<String, LatencyHistogram> getTermHistograms() {
+        return terms;
+    }
+
+    /**
+     * @return label of the SearchTerm that ran out of time, by page number
+     * (from 0), for each page that went over the regex time budget
+     */
+    public Map<Integer, String> getOverBudgetPages() {
+        return overBudget;
+    }
+
+    /**
+     * @param kind kind of page
+     * @return number of pages of that kind found by a pre-scan; 0 for every
+     * kind if there was none
+     */
+    public int getPageKindCount(PageProfile.Kind kind) {
+        return pageKinds.get(kind).get();
+    }
+
+    /**
+     * @return why each page was left out of the output, by page number (from
+     * 0)
+     */
+    public Map<Integer, String> getDroppedPages() {
+        return dropped;
+    }
+
+    /**
+     * @return pages that collided with an earlier page's filename, in the
+     * order they were found
+     */
+    public List<Collision> getCollisions() {
+        synchronized (collisions) {
+            return new ArrayList<>(collisions);
+        }
+    }
+
+    @Override
+    public int getCollisionCount() {
+        return collisions.size();
+    }
+
+    @Override
+    public int getDroppedPageCount() {
+        return dropped.size();
+    }
+
+    @Override
+    public int getOverBudgetPageCount() {
+        return overBudget.size();
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public int getPageCount() {
+        return pages.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytes.get();
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return ((finished != 0 ? finished : System.nanoTime()) - started) / 1000000;
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed > 0 ? pages.get() * 1000.0 / elapsed : 0;
+    }
+
+    /**
+     * @return most heap in use at the end of any page, in bytes
+     */
+    @Override
+    public long getHeapHighWaterMark() {
+        return heapHighWaterMark.get();
+    }
+
+    @Override
+    public Map<String, Double> getMeanMillis() {
+        Map<String, Double> means = new LinkedHashMap<>();
+        for (Map.Entry<Stage, LatencyHistogram> stage : stages.entrySet()) {
+            means.put(stage.getKey().name(), stage.getValue().getMeanMillis());
+        }
+        return means;
+    }
+
+    @Override
+    public Map<String, Double> getP99Millis() {
+        Map<String, Double> p99 = new LinkedHashMap<>();
+        for (Map.Entry<Stage, LatencyHistogram> stage : stages.entrySet()) {
+            p99.put(stage.getKey().name(), stage.getValue().getPercentileMillis(99));
+        }
+        return p99;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, in place of any
+     * registered earlier for a source of the same name, so that the last run
+     * of each source stays visible after it has finished. Only the most
+     * recent sources are kept registered, so a long-running service doesn't
+     * keep the metrics of every source it has ever split.
+     *
+     * @throws IOException if the metrics can't be registered
+     */
+    public void registerMBean() throws IOException {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=RunMetrics,source=" + ObjectName.quote(source));
+            synchronized (RunMetrics.class) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+                registered.remove(name); // re-registering a source makes it the most recent
+                registered.add(name);
+                Iterator<ObjectName> oldest = registered.iterator();
+                while (registered.size() > MAX_REGISTERED) {
+                    ObjectName dropped = oldest.next();
+                    oldest.remove();
+                    if (server.isRegistered(dropped)) {
+                        server.unregisterMBean(dropped);
+                    }
+                }
+            }
+        } catch (JMException ex) {
+            throw new IOException("Could not register the run metrics over JMX: " + ex.getLocalizedMessage(), ex);
+        }
+    }
+
+    /**
+     * @return the figures as a JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"source\": \"").append(escape(source)).append("\",\n");
+        json.append(String.format(Locale.ROOT, "  \"pages\": %d,\n  \"bytesWritten\": %d,\n  \"elapsedMillis\": %d,\n"
+                + "  \"pagesPerSecond\": %.2f,\n  \"heapHighWaterMark\": %d,\n",
+                getPageCount(), getBytesWritten(), getElapsedMillis(), getPagesPerSecond(), getHeapHighWaterMark()));
+        json.append("  \"stages\": {");
+        String separator = "\n";
+        for (Map.Entry<Stage, LatencyHistogram> stage : stages.entrySet()) {
+            json.append(separator).append("    \"").append(stage.getKey().name()).append("\": ").append(stage.getValue().toJson());
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"searchTerms\": {");
+        separator = "\n";
+        for (Map.Entry<String, LatencyHistogram> term : terms.entrySet()) {
+            json.append(separator).append("    \"").append(escape(term.getKey())).append("\": ").append(term.getValue().toJson());
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"pageKinds\": {");
+        separator = "\n";
+        for (Map.Entry<PageProfile.Kind, AtomicInteger> kind : pageKinds.entrySet()) {
+            json.append(separator).append("    \"").append(kind.getKey().name()).append("\": ").append(kind.getValue().get());
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"collisions\": [");
+        separator = "\n";
+        for (Collision collision : getCollisions()) {
+            json.append(separator).append("    ").append(collision.toJson());
+            separator = ",\n";
+        }
+        json.append(collisions.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"overBudgetPages\": [");
+        separator = "\n";
+        for (Map.Entry<Integer, String> page : overBudget.entrySet()) {
+            json.append(separator).append("    {\"page\": ").append(page.getKey() + 1)
+                    .append(", \"searchTerm\": \"").append(escape(page.getValue())).append("\"}");
+            separator = ",\n";
+        }
+        json.append(overBudget.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"droppedPages\": [");
+        separator = "\n";
+        for (Map.Entry<Integer, String> page : dropped.entrySet()) {
+            json.append(separator).append("    {\"page\": ").append(page.getKey() + 1)
+                    .append(", \"reason\": \"").append(escape(page.getValue())).append("\"}");
+            separator = ",\n";
+        }
+        return json.append(dropped.isEmpty() ? "]\n}" : "\n  ]\n}").toString();
+    }
+
+    /**
+     * Writes a JSON report of one or more runs: a single object for one run,
+     * or an array of them
+     *
+     * @param runs metrics of the runs
+     * @param report file to write
+     * @throws IOException
+     */
+    public static void writeJson(List<RunMetrics> runs, File report) throws IOException {
+        try (Writer out = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8)) {
+            if (runs.size() == 1) {
+                out.write(runs.get(0).toJson());
+            } else {
+                out.write("[");
+                for (int i = 0; i < runs.size(); i++) {
+                    out.write((i > 0 ? ",\n" : "\n") + runs.get(i).toJson());
+                }
+                out.write("\n]");
+            }
+            out.write("\n");
+        }
+    }
+
+    /**
+     * Appends a row per run to a CSV file, writing the header first if the
+     * file is new, so that the same file can track runs over time. The
+     * per-SearchTerm timings are only in the JSON report, as the terms vary
+     * between runs.
+     *
+     * @param runs metrics of the runs
+     * @param report file to append to
+     * @throws IOException
+     */
+    public static void appendCsv(List<RunMetrics> runs, File report) throws IOException {
+        boolean newFile = !report.isFile() || report.length() == 0;
+        try (Writer out = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (newFile) {
+                StringBuilder header = new StringBuilder("time,source,pages,bytes_written,elapsed_ms,pages_per_s,heap_high_water_mark");
+                for (Stage stage : Stage.values()) {
+                    String name = stage.name().toLowerCase(Locale.ROOT);
+                    header.append(',').append(name).append("_mean_ms,").append(name).append("_p99_ms");
+                }
+                header.append(",over_budget_pages,collisions,dropped_pages");
+                out.write(header.append('\n').toString());
+            }
+            String time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date());
+            for (RunMetrics run : runs) {
+                StringBuilder row = new StringBuilder(time).append(",\"").append(run.source.replace("\"", "\"\"")).append('"');
+                row.append(String.format(Locale.ROOT, ",%d,%d,%d,%.2f,%d", run.getPageCount(), run.getBytesWritten(),
+                        run.getElapsedMillis(), run.getPagesPerSecond(), run.getHeapHighWaterMark()));
+                for (Stage stage : Stage.values()) {
+                    LatencyHistogram histogram = run.stages.get(stage);
+                    row.append(String.format(Locale.ROOT, ",%.3f,%.3f", histogram.getMeanMillis(), histogram.getPercentileMillis(99)));
+                }
+                row.append(',').append(run.getOverBudgetPageCount()).append(',').append(run.getCollisionCount()).append(',').append(run.getDroppedPageCount());
+                out.write(row.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * A page that resolved to the same output filename as an earlier page
+     */
+    public static class Collision {
+
+        private final String filename;
+        private final int firstPage;
+        private final int pageNumber;
+        private final String writtenAs;
+
+        Collision(String f, int first, int p, String w) {
+            this.filename = f;
+            this.firstPage = first;
+            this.pageNumber = p;
+            this.writtenAs = w;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public int getFirstPage() {
+            return firstPage;
+        }
+
+        public int getPageNumber() {
+            return pageNumber;
+        }
+
+        /**
+         * @return filename the later page was written to, or null if the run
+         * failed instead
+         */
+        public String getWrittenAs() {
+            return writtenAs;
+        }
+
+        String toJson() {
+            return "{\"filename\": \"" + escape(filename) + "\", \"firstPage\": " + (firstPage + 1) + ", \"page\": " + (pageNumber + 1)
+                    + ", \"writtenAs\": " + (writtenAs != null ? "\"" + escape(writtenAs) + "\"" : "null") + "}";
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
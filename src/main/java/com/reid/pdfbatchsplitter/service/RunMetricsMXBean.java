@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.util.Map;
+
+/**
+ * Management interface of RunMetrics, so that the progress and timings of a
+ * run can be watched over JMX, eg with JConsole
+ *
+ * @author pmreid
+ */
+public interface RunMetricsMXBean {
+
+    String getSource();
+
+    int getPageCount();
+
+    long getBytesWritten();
+
+    long getElapsedMillis();
+
+    double getPagesPerSecond();
+
+    long getHeapHighWaterMark();
+
+    int getOverBudgetPageCount();
+
+    int getCollisionCount();
+
+    int getDroppedPageCount();
+
+    /**
+     * @return mean milliseconds per page of each stage, by stage name
+     */
+    Map<String, Double> getMeanMillis();
+
+    /**
+     * @return 99th percentile milliseconds per page of each stage, by stage
+     * name
+     */
+    Map<String, Double> getP99Millis();
+}
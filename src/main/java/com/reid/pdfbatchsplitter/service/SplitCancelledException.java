@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a PDFSplitter run that stopped because it was cancelled. The
+ * source and any pages in progress have been closed by the time it is
+ * thrown, and the pages already written are kept in the checkpoint journal,
+ * so the run can be resumed later.
+ *
+ * @author pmreid
+ */
+public class SplitCancelledException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SplitCancelledException() {
+        super("The split was cancelled");
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+/**
+ * Runs the tesseract command-line OCR engine on each image, piping it in as a
+ * PNG and reading the text back, so that nothing is written to disk. Each
+ * call starts its own tesseract process, so calls can run in parallel.
+ *
+ * @author pmreid
+ */
+public class TesseractOcrEngine implements OcrEngine {
+
+    private static final long TIMEOUT_SECONDS = 120; // longest a single page may take before tesseract is stopped
+    private final String command;
+    private final String language;
+
+    public TesseractOcrEngine() {
+        this("tesseract", "eng");
+    }
+
+    /**
+     * @param c tesseract command, or the full path to it
+     * @param l tesseract language code(s), eg "eng" or "eng+fra"
+     */
+    public TesseractOcrEngine(String c, String l) {
+        this.command = c;
+        this.language = l;
+    }
+
+    @Override
+    public String recognise(BufferedImage image, int dpi) throws IOException {
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        final Process process = new ProcessBuilder(command, "stdin", "stdout", "-l", language, "--dpi", String.valueOf(dpi)).start();
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        // feed and read tesseract on their own threads, so that neither a full pipe nor a hung
+        // process can block this one beyond the timeout
+        Thread imageWriter = start(new Runnable() {
+            @Override
+            public void run() {
+                try (OutputStream in = process.getOutputStream()) {
+                    png.writeTo(in);
+                } catch (IOException ex) {
+                    // the process has gone; its exit value says what happened
+                }
+            }
+        });
+        Thread textReader = start(new Runnable() {
+            @Override
+            public void run() {
+                copy(process.getInputStream(), text);
+            }
+        });
+        Thread errorReader = start(new Runnable() {
+            @Override
+            public void run() {
+                copy(process.getErrorStream(), errors);
+            }
+        });
+        try {
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("tesseract took longer than " + TIMEOUT_SECONDS + " seconds");
+            }
+            imageWriter.join();
+            textReader.join();
+            errorReader.join();
+            if (process.exitValue() != 0) {
+                throw new IOException("tesseract failed: " + new String(errors.toByteArray(), StandardCharsets.UTF_8).trim());
+            }
+            return new String(text.toByteArray(), StandardCharsets.UTF_8);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for tesseract", ex);
+        } finally {
+            process.destroyForcibly(); // does nothing if it has already finished; otherwise kills it, so the pipes close and the threads end
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "tesseract/" + language;
+    }
+
+    private static Thread start(Runnable r) {
+        Thread thread = new Thread(r);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void copy(InputStream from, ByteArrayOutputStream to) {
+        byte[] buffer = new byte[8192];
+        int read;
+        try {
+            while ((read = from.read(buffer)) != -1) {
+                to.write(buffer, 0, read);
+            }
+        } catch (IOException ex) {
+            // the process has gone; its exit value says what happened
+        }
+    }
+}
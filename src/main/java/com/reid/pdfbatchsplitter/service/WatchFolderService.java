@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-running service which watches a drop directory and splits each new
+ * PDF as soon as it has been completely written, then moves the source into
+ * an archive directory (or its "failed" sub-directory if it could not be
+ * split). Running in one JVM avoids paying the start-up and JIT warm-up
+ * cost for every file, and the compiled SearchTerm patterns and any text
+ * cache are shared by every job; the workers themselves (text extractors and
+ * interpreters) are still created afresh for each file.
+ *
+ * Results are only passed to the result listener, and a source which can't
+ * be archived is logged; nothing is printed.
+ *
+ * A file is only moved once it has been split, so if the service is stopped
+ * part way through, the file is still in the drop directory and is picked up
+ * again when the service next starts.
+ *
+ * @author pmreid
+ */
+public class WatchFolderService {
+
+    private static final long POLL_MILLIS = 500;
+
+    private final File dropDirectory;
+    private final File archiveDirectory;
+    private final BatchJobScheduler scheduler;
+    private final PathMatcher matcher;
+    private long settleMillis = 2000; // how long a file's size must stay the same before it is treated as fully written
+    private final Map<Path, long[]> pending = new LinkedHashMap<>(); // file -> {size, last modified, time the size was last seen to change}
+    private volatile boolean running;
+    private Consumer<BatchJobResult> resultListener; // told of each source split, eg to write a report
+
+    /**
+     * @param drop directory to watch for new PDFs
+     * @param archive directory to move finished sources into
+     * @param s scheduler used to split each source into the destination
+     * @param glob glob pattern for the file names to split, eg "*.pdf"
+     */
+    public WatchFolderService(File drop, File archive, BatchJobScheduler s, String glob) {
+        this.dropDirectory = drop;
+        this.archiveDirectory = archive;
+        this.scheduler = s;
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    }
+
+    /**
+     * Watches the drop directory until stop() is called, splitting files as
+     * they arrive. Any matching files already in the directory are split
+     * first.
+     *
+     * @throws IOException if the drop directory cannot be watched
+     */
+    public void run() throws IOException {
+        running = true;
+        if (!archiveDirectory.isDirectory() && !archiveDirectory.mkdirs()) {
+            throw new IOException("Could not create archive directory " + archiveDirectory.getAbsolutePath());
+        }
+        Path drop = dropDirectory.toPath();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            drop.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            try (DirectoryStream<Path> existing = Files.newDirectoryStream(drop)) {
+                for (Path p : existing) {
+                    notice(p);
+                }
+            }
+            while (running) {
+                WatchKey key;
+                try {
+                    key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                            notice(drop.resolve((Path) event.context()));
+                        } else {
+                            rescan(drop); // events were lost, so look at the directory itself
+                        }
+                    }
+                    key.reset();
+                }
+                processSettledFiles();
+            }
+        }
+    }
+
+    /**
+     * Asks the service to stop. A file which is being split is finished
+     * first; run() then returns.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void rescan(Path drop) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(drop)) {
+            for (Path p : entries) {
+                notice(p);
+            }
+        }
+    }
+
+    /**
+     * Records that a file has appeared or changed
+     *
+     * @param p path of the file in the drop directory
+     */
+    private void notice(Path p) {
+        if (!matcher.matches(p.getFileName()) || !Files.isRegularFile(p)) {
+            return;
+        }
+        File f = p.toFile();
+        long[] state = pending.get(p);
+        if (state == null || state[0] != f.length() || state[1] != f.lastModified()) {
+            pending.put(p, new long[]{f.length(), f.lastModified(), System.currentTimeMillis()});
+        }
+    }
+
+    /**
+     * Splits each pending file whose size and modification time have not
+     * changed for the settle period, ie which has finished being written
+     */
+    private void processSettledFiles() {
+        Iterator<Map.Entry<Path, long[]>> it = pending.entrySet().iterator();
+        while (it.hasNext() && running) {
+            Map.Entry<Path, long[]> entry = it.next();
+            File f = entry.getKey().toFile();
+            long[] state = entry.getValue();
+            if (!f.isFile()) {
+                it.remove(); // removed from the drop directory before it was split
+            } else if (f.length() != state[0] || f.lastModified() != state[1]) {
+                entry.setValue(new long[]{f.length(), f.lastModified(), System.currentTimeMillis()}); // still being written
+            } else if (System.currentTimeMillis() - state[2] >= settleMillis) {
+                it.remove();
+                process(f);
+            }
+        }
+    }
+
+    /**
+     * Splits a single source and moves it to the archive
+     *
+     * @param f fully written source PDF
+     */
+    private void process(File f) {
+        BatchJobResult result;
+        try {
+            result = scheduler.run(Collections.singletonList(f)).get(0);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            running = false;
+            return; // left in the drop directory, to be split next time
+        }
+        if (resultListener != null) {
+            resultListener.accept(result);
+        }
+        try {
+            File target = result.isSuccessful() ? archiveDirectory : new File(archiveDirectory, "failed");
+            if (!target.isDirectory() && !target.mkdirs()) {
+                throw new IOException("Could not create directory " + target.getAbsolutePath());
+            }
+            File archived = new File(target, f.getName());
+            if (archived.exists()) {
+                archived = new File(target, System.currentTimeMillis() + "_" + f.getName()); // keep earlier copies of the same name
+            }
+            Files.move(f.toPath(), archived.toPath());
+        } catch (IOException ex) {
+            Logger.getLogger(WatchFolderService.class.getName()).log(Level.WARNING, "Could not archive " + f.getAbsolutePath() + ": " + ex.getLocalizedMessage(), ex);
+        }
+    }
+
+    /**
+     * @param resultListener told of the result of each source once it has
+     * been split, before it is archived
+     */
+    public void setResultListener(Consumer<BatchJobResult> resultListener) {
+        this.resultListener = resultListener;
+    }
+
+    public long getSettleMillis() {
+        return settleMillis;
+    }
+
+    /**
+     * @param settleMillis how long a file must go unchanged before it is
+     * treated as fully written and split
+     */
+    public void setSettleMillis(long settleMillis) {
+        this.settleMillis = settleMillis;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Tests the extraction of required literals from regular expressions, and
+ * the scan for them
+ *
+ * @author pmreid
+ */
+public class AnchorPrefilterTest {
+
+    @Test
+    public void findsTheLongestLiteral() {
+        assertEquals("Candidate Number", AnchorPrefilter.requiredLiteral("([0-9]{4})(Candidate Number)"));
+        assertEquals("UPN", AnchorPrefilter.requiredLiteral("(UPN:?)[\\s\\S]:?([a-zA-Z0-9]+)"));
+    }
+
+    @Test
+    public void escapedSymbolsAreLiteral() {
+        assertEquals("Total.Marks", AnchorPrefilter.requiredLiteral("Total\\.Marks"));
+        assertEquals("Candidate", AnchorPrefilter.requiredLiteral("\\d{4}\\sCandidate"));
+        assertEquals("Name", AnchorPrefilter.requiredLiteral("\\pLName"));
+        assertEquals("Name", AnchorPrefilter.requiredLiteral("\\p{Lu}Name"));
+    }
+
+    @Test
+    public void escapesWithArgumentsEndTheLiteral() {
+        assertEquals("Ref", AnchorPrefilter.requiredLiteral("Ref\\x41BCDEF"));
+        assertEquals("Ref", AnchorPrefilter.requiredLiteral("Ref\\x{41}BCDEF"));
+        assertNull(AnchorPrefilter.requiredLiteral("\\u00e9tudiant"));
+        assertEquals("Number", AnchorPrefilter.requiredLiteral("Number\\0101"));
+        assertEquals("Line", AnchorPrefilter.requiredLiteral("Line\\cMEnd"));
+        assertEquals("Name", AnchorPrefilter.requiredLiteral("(Name)\\1"));
+    }
+
+    @Test
+    public void escapesInsideGroupsDropTheGroup() {
+        assertEquals("Cand", AnchorPrefilter.requiredLiteral("Cand(idate\\x41)?"));
+        assertNull(AnchorPrefilter.requiredLiteral("(Candidate\\cM)"));
+    }
+
+    @Test
+    public void optionalCharactersAreNotRequired() {
+        assertEquals("Candidate", AnchorPrefilter.requiredLiteral("Candidates?"));
+        assertEquals("Candidat", AnchorPrefilter.requiredLiteral("Candidate*"));
+        assertEquals("Candidat", AnchorPrefilter.requiredLiteral("Candidate{0,}"));
+        assertEquals("Candidat", AnchorPrefilter.requiredLiteral("Candidate{0,2}"));
+        assertEquals("Candidate", AnchorPrefilter.requiredLiteral("Candidate+"));
+        assertEquals("Candidate", AnchorPrefilter.requiredLiteral("Candidate{2}"));
+    }
+
+    @Test
+    public void optionalGroupsAreNotRequired() {
+        assertEquals("Number", AnchorPrefilter.requiredLiteral("(Candidate )?Number"));
+        assertNull(AnchorPrefilter.requiredLiteral("[0-9]+(Candidate){0,}"));
+        assertEquals("Candidate", AnchorPrefilter.requiredLiteral("(Candidate)+[0-9]{4}"));
+    }
+
+    @Test
+    public void alternationHasNoAnchor() {
+        assertNull(AnchorPrefilter.requiredLiteral("Candidate|Student"));
+        assertNull(AnchorPrefilter.requiredLiteral("(Cand|Stud)ent Number"));
+        assertNull(AnchorPrefilter.requiredLiteral("(?i)Candidate"));
+    }
+
+    @Test
+    public void shortOrMissingLiteralsHaveNoAnchor() {
+        assertNull(AnchorPrefilter.requiredLiteral(null));
+        assertNull(AnchorPrefilter.requiredLiteral("[0-9]{4}"));
+        assertNull(AnchorPrefilter.requiredLiteral("\\d+\\s\\w+"));
+        assertNull(AnchorPrefilter.requiredLiteral("ID[0-9]+"));
+    }
+
+    @Test
+    public void scanFindsEveryOccurrence() {
+        AnchorPrefilter prefilter = new AnchorPrefilter(Arrays.asList("Candidate Number", "UPN", "Number"));
+        prefilter.scan("1234Candidate Number UPN:A1 Candidate Number");
+        assertEquals(2, prefilter.getHitCount(0));
+        assertEquals(4, prefilter.getHitStart(0, 0));
+        assertEquals(28, prefilter.getHitStart(0, 1));
+        assertEquals(1, prefilter.getHitCount(1));
+        assertEquals(21, prefilter.getHitStart(1, 0));
+        assertEquals(2, prefilter.getHitCount(2)); // found inside the longer anchor
+        assertEquals(14, prefilter.getHitStart(2, 0));
+    }
+
+    @Test
+    public void absentAnchorHasNoHits() {
+        AnchorPrefilter prefilter = new AnchorPrefilter(Arrays.asList("Candidate Number", "UPN"));
+        prefilter.scan("1234Candidate Number");
+        assertEquals(1, prefilter.getHitCount(0));
+        assertEquals(0, prefilter.getHitCount(1));
+        prefilter.scan("no identifiers on this page");
+        assertEquals(0, prefilter.getHitCount(0)); // the results of the previous scan are cleared
+        assertEquals(0, prefilter.getHitCount(1));
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the tar archives written by ArchiveOutputSink by reading them back,
+ * header by header
+ *
+ * @author pmreid
+ */
+public class ArchiveOutputSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void longNamesAreCutAtACharacter() throws IOException {
+        String name = repeat('a', 99) + "étudiant.pdf"; // the two bytes of the é straddle the 100 byte name field
+        byte[] pdf = "%PDF-1.7 long".getBytes(StandardCharsets.US_ASCII);
+        File dir = folder.getRoot();
+        try (ArchiveOutputSink sink = new ArchiveOutputSink(dir, "out", ArchiveFormat.TAR, -1, 0)) {
+            sink.write(1, name, pdf);
+        }
+        TarReader tar = new TarReader(new File(dir, "out.tar"));
+        assertEquals(repeat('a', 99), tar.ustarNames.get(0)); // the ustar name stops short of the é rather than splitting it
+        assertEquals(1, tar.files.size());
+        assertArrayEquals(pdf, tar.files.get(name)); // the pax header gives the whole name
+    }
+
+    @Test
+    public void compressedArchivesReadBack() throws IOException {
+        File dir = folder.getRoot();
+        try (ArchiveOutputSink sink = new ArchiveOutputSink(dir, "out", ArchiveFormat.TAR_GZ, 9, 0)) {
+            sink.write(1, "p_1001.pdf", pdf(1));
+            sink.write(2, 3, "p_1002.pdf", pdf(2));
+        }
+        TarReader tar = new TarReader(new File(dir, "out.tar.gz"));
+        assertEquals(Arrays.asList("p_1001.pdf", "p_1002.pdf"), tar.ustarNames);
+        assertArrayEquals(pdf(1), tar.files.get("p_1001.pdf"));
+        assertArrayEquals(pdf(2), tar.files.get("p_1002.pdf"));
+    }
+
+    @Test
+    public void newArchiveAfterPagesPerArchive() throws IOException {
+        File dir = folder.getRoot();
+        try (ArchiveOutputSink sink = new ArchiveOutputSink(dir, "out", ArchiveFormat.TAR, -1, 2)) {
+            sink.write(1, "a.pdf", pdf(1));
+            sink.write(2, 3, "b.pdf", pdf(2)); // goes over the limit, but a file is never split between archives
+            sink.write(4, "c.pdf", pdf(3));
+            sink.write(5, "d.pdf", pdf(4));
+            sink.write(6, "e.pdf", pdf(5));
+            assertEquals(Arrays.asList(new File(dir, "out_001.tar"), new File(dir, "out_002.tar"), new File(dir, "out_003.tar")), sink.getArchives());
+        }
+        assertEquals(Arrays.asList("a.pdf", "b.pdf"), new TarReader(new File(dir, "out_001.tar")).ustarNames);
+        assertEquals(Arrays.asList("c.pdf", "d.pdf"), new TarReader(new File(dir, "out_002.tar")).ustarNames);
+        assertEquals(Arrays.asList("e.pdf"), new TarReader(new File(dir, "out_003.tar")).ustarNames);
+        assertArrayEquals(pdf(5), new TarReader(new File(dir, "out_003.tar")).files.get("e.pdf"));
+    }
+
+    @Test
+    public void abortLeavesOnlyAPartialArchive() throws IOException {
+        File dir = folder.getRoot();
+        ArchiveOutputSink sink = new ArchiveOutputSink(dir, "out", ArchiveFormat.TAR_GZ, -1, 0);
+        sink.write(1, "p_1001.pdf", pdf(1));
+        sink.abort();
+        sink.write(2, "p_1002.pdf", pdf(2)); // discarded
+        sink.close();
+        assertArrayEquals(new String[]{"out.tar.gz" + ArchiveOutputSink.PARTIAL_EXTENSION}, dir.list());
+        assertEquals(Arrays.asList(new File(dir, "out.tar.gz" + ArchiveOutputSink.PARTIAL_EXTENSION)), sink.getArchives());
+    }
+
+    private static byte[] pdf(int n) {
+        byte[] pdf = new byte[700 * n]; // not a whole number of blocks, so the padding is read too
+        Arrays.fill(pdf, (byte) ('0' + n));
+        return pdf;
+    }
+
+    private static String repeat(char c, int n) {
+        char[] chars = new char[n];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * Reads a whole tar archive, gzipped if its name ends in .gz, checking
+     * each header's checksum and that the archive ends with two empty blocks
+     */
+    private static class TarReader {
+
+        private final List<String> ustarNames = new ArrayList<>(); // names in the ustar headers of the files
+        private final Map<String, byte[]> files = new LinkedHashMap<>(); // by full name, after any pax path
+
+        TarReader(File archive) throws IOException {
+            try (InputStream in = archive.getName().endsWith(".gz") ? new GZIPInputStream(new FileInputStream(archive)) : new FileInputStream(archive)) {
+                byte[] data = readAll(in);
+                assertEquals(0, data.length % 512);
+                String paxPath = null;
+                int offset = 0;
+                while (true) {
+                    byte[] header = Arrays.copyOfRange(data, offset, offset + 512);
+                    offset += 512;
+                    if (isEmpty(header)) {
+                        assertTrue(isEmpty(Arrays.copyOfRange(data, offset, offset + 512)));
+                        assertEquals(data.length, offset + 512);
+                        return;
+                    }
+                    assertEquals("ustar\u000000", new String(header, 257, 8, StandardCharsets.US_ASCII));
+                    assertEquals(octal(header, 148, 6), checksum(header)); // six digits, a NUL and a space
+                    int size = (int) octal(header, 124, 11);
+                    byte[] content = Arrays.copyOfRange(data, offset, offset + size);
+                    offset += (size + 511) / 512 * 512;
+                    String name = field(header, 0, 100);
+                    if (header[156] == 'x') {
+                        String record = new String(content, StandardCharsets.UTF_8);
+                        assertEquals(Integer.parseInt(record.substring(0, record.indexOf(' '))), content.length);
+                        paxPath = record.substring(record.indexOf("path=") + 5, record.length() - 1);
+                    } else {
+                        assertEquals('0', header[156]);
+                        ustarNames.add(name);
+                        files.put(paxPath != null ? paxPath : name, content);
+                        paxPath = null;
+                    }
+                }
+            }
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) != -1;) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static boolean isEmpty(byte[] block) {
+            for (byte b : block) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the field up to its first NUL, which must leave valid UTF-8
+         */
+        private static String field(byte[] header, int offset, int length) {
+            int end = offset;
+            while (end < offset + length && header[end] != 0) {
+                end++;
+            }
+            String s = new String(header, offset, end - offset, StandardCharsets.UTF_8);
+            assertArrayEquals(Arrays.copyOfRange(header, offset, end), s.getBytes(StandardCharsets.UTF_8)); // no character was cut in two
+            return s;
+        }
+
+        private static long octal(byte[] header, int offset, int length) {
+            return Long.parseLong(new String(header, offset, length, StandardCharsets.US_ASCII), 8);
+        }
+
+        private static long checksum(byte[] header) {
+            long sum = 0;
+            for (int i = 0; i < header.length; i++) {
+                sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 pmreid
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reid.pdfbatchsplitter.service;
+
+import com.reid.pdfbatchsplitter.domain.primitives.SearchTerm;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a run which stops part way through is resumed from its
+ * checkpoint journal, and only with the same naming settings
+ *
+ * @author pmreid
+ */
+public class CheckpointJournalTest {
+
+    private static final int PAGES = 20;
+    private static final int FAILING_PAGE = 8; // the page whose write fails, interrupting the first run
+    private static final String TERM = "([0-9]{4})(Candidate Number)";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File source;
+    private File destination;
+
+    @Before
+    public void createSource() throws IOException {
+        source = folder.newFile("batch.pdf");
+        destination = folder.newFolder("out");
+        try (PDDocument doc = new PDDocument()) {
+            for (int i = 0; i < PAGES; i++) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream text = new PDPageContentStream(doc, page)) {
+                    text.beginText();
+                    text.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                    text.newLineAtOffset(72, 700);
+                    text.showText((1000 + i) + "Candidate Number");
+                    text.endText();
+                }
+            }
+            doc.save(source);
+        }
+    }
+
+    @Test
+    public void resumesWithoutRewritingPages() throws IOException {
+        List<String> written = interruptedRun();
+        assertFalse(written.isEmpty());
+        for (String name : written) {
+            assertTrue(new File(destination, name).setLastModified(0)); // marks the files, so a rewrite would show
+        }
+        PDFSplitter resumed = splitter("p", "pdf", TERM);
+        resumed.process();
+        assertEquals(written.size(), resumed.getResumedCount());
+        for (String name : written) {
+            assertEquals(name + " was written again", 0, new File(destination, name).lastModified());
+        }
+        assertEquals(PAGES, outputs().size());
+        assertFalse(new File(destination, CheckpointJournal.JOURNAL_FILENAME).exists()); // deleted once the run completes
+    }
+
+    @Test
+    public void changedPrefixStartsAgain() throws IOException {
+        interruptedRun();
+        assertNotResumed(splitter("q", "pdf", TERM));
+    }
+
+    @Test
+    public void changedSuffixStartsAgain() throws IOException {
+        interruptedRun();
+        assertNotResumed(splitter("p", "PDF", TERM));
+    }
+
+    @Test
+    public void changedTermsStartAgain() throws IOException {
+        interruptedRun();
+        assertNotResumed(splitter("p", "pdf", "([0-9]{4})(Candidate)"));
+    }
+
+    private void assertNotResumed(PDFSplitter splitter) throws IOException {
+        splitter.process();
+        assertEquals(0, splitter.getResumedCount());
+    }
+
+    /**
+     * Runs a split which fails part way through, as though the disk had
+     * filled up: the file for FAILING_PAGE is blocked by a directory of the
+     * same name, which is removed again afterwards
+     *
+     * @return files written by the interrupted run
+     */
+    private List<String> interruptedRun() throws IOException {
+        File blocked = new File(destination, "p_" + (1000 + FAILING_PAGE) + ".pdf");
+        assertTrue(new File(blocked, "in-the-way").mkdirs());
+        try {
+            splitter("p", "pdf", TERM).process();
+            fail("The run should have failed on page " + FAILING_PAGE);
+        } catch (IOException ex) {
+            // expected
+        }
+        assertTrue(new File(blocked, "in-the-way").delete() && blocked.delete());
+        assertTrue(new File(destination, CheckpointJournal.JOURNAL_FILENAME).isFile());
+        return outputs();
+    }
+
+    private PDFSplitter splitter(String prefix, String suffix, String regex) throws IOException {
+        List<SearchTerm> terms = new ArrayList<>(Arrays.asList(new SearchTerm("Candidate Number", regex, 1)));
+        PDFSplitter splitter = new PDFSplitter(source, destination, terms, prefix, suffix, false);
+        splitter.setWorkerCount(1);
+        return splitter;
+    }
+
+    private List<String> outputs() {
+        List<String> names = new ArrayList<>();
+        for (String name : destination.list()) {
+            if (!name.equals(CheckpointJournal.JOURNAL_FILENAME)) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+}